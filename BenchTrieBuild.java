@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+
+  Usage: BenchTrieBuild wordFile [rounds]
+
+  Description:
+
+  Times the two ways of building the dictionary trie with its suggestion
+  lists: inserting the words one at a time from the root and then
+  computing the lists in a separate pass, and the one-pass sorted build
+  SmartWord uses. Both get the same sorted, distinct words of wordFile and
+  produce the same trie. Each is run rounds times after one warm-up run and
+  the best and average times are printed. Large word files can be made
+  with GenerateCorpus.
+ */
+public class BenchTrieBuild {
+
+    private static final int SUGGESTION_CAP = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            System.err.println("Usage: BenchTrieBuild wordFile [rounds]");
+            System.exit(-1);
+        }
+        int rounds = args.length == 2 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> sortedWords = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            String word = line.toLowerCase().trim();
+            if (word.matches("[a-z]+")) sortedWords.add(word);
+        }
+        Collections.sort(sortedWords);
+        WordArena words = new WordArena();
+        List<String> distinct = new ArrayList<>();
+        for (String word : sortedWords) {
+            if (words.find(word) < 0) distinct.add(word);
+            words.setFrequency(words.intern(word), 1);
+        }
+
+        System.out.printf("%d words, %d rounds%n", distinct.size(), rounds);
+        System.out.printf("%-16s %10s %12s %12s %12s%n", "build", "nodes", "best ms", "avg ms", "ns/word");
+        report("repeated insert", distinct, words, false, rounds);
+        report("sorted bulk", distinct, words, true, rounds);
+    }
+
+    private static void report(String name, List<String> sortedWords, WordArena words, boolean bulk, int rounds) {
+        long nodes = SmartWord.buildDictionaryTrie(sortedWords, words, bulk, SUGGESTION_CAP);
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            SmartWord.buildDictionaryTrie(sortedWords, words, bulk, SUGGESTION_CAP);
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+
+        System.out.printf("%-16s %10d %12.2f %12.2f %12.1f%n",
+            name, nodes, best / 1e6, total / 1e6 / rounds, (double) best / sortedWords.size());
+    }
+}
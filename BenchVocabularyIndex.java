@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+  Usage: BenchVocabularyIndex wordFile messageFile [rounds]
+
+  Description:
+
+  Compares three ways of looking a word up by its text: a HashMap from String
+  to id, the WordArena open-addressed table, and the WordArena after freeze()
+  has put the dictionary behind a minimal perfect hash. All three hold the
+  words of wordFile; the queries are the words of messageFile in order, so
+  hits and misses come in their real proportions. For each structure the
+  average lookup time and the heap it retains are printed; the arena rows
+  also give the bytes of the lookup structure alone.
+ */
+public class BenchVocabularyIndex {
+
+    // Sum of the ids looked up, published so the timed loops cannot be optimized away.
+    static volatile long sink;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: BenchVocabularyIndex wordFile messageFile [rounds]");
+            System.exit(-1);
+        }
+        int rounds = args.length == 3 ? Integer.parseInt(args[2]) : 20;
+
+        List<String> vocabulary = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            String word = line.toLowerCase().trim();
+            if (!word.isEmpty()) vocabulary.add(word);
+        }
+        List<String> queryList = new ArrayList<>();
+        for (String token : new String(Files.readAllBytes(Paths.get(args[1]))).toLowerCase().split("[^a-z]+")) {
+            if (!token.isEmpty()) queryList.add(token);
+        }
+        String[] queries = queryList.toArray(new String[0]);
+
+        System.out.printf("%d words, %d queries, %d rounds%n", vocabulary.size(), queries.length, rounds);
+        System.out.printf("%-16s %12s %14s %12s %8s%n", "index", "ns/lookup", "heap bytes", "index bytes", "hits");
+
+        long before = usedHeap();
+        Map<String, Integer> map = new HashMap<>();
+        for (String word : vocabulary) map.putIfAbsent(word, map.size());
+        long mapHeap = usedHeap() - before;
+        report("HashMap", mapHeap, -1, queries, rounds, word -> {
+            Integer id = map.get(word);
+            return id == null ? -1 : id;
+        });
+
+        before = usedHeap();
+        WordArena table = load(vocabulary);
+        long tableHeap = usedHeap() - before;
+        report("arena table", tableHeap, table.indexBytes(), queries, rounds, table::find);
+
+        before = usedHeap();
+        WordArena frozen = load(vocabulary);
+        if (!frozen.freeze()) System.err.println("perfect hash could not be built");
+        long frozenHeap = usedHeap() - before;
+        report("arena + MPHF", frozenHeap, frozen.indexBytes(), queries, rounds, frozen::find);
+
+        // Keep every structure reachable until all heap measurements are taken.
+        if (map.size() + table.size() + frozen.size() == 0) System.out.println();
+    }
+
+    private interface Lookup {
+        int find(String word);
+    }
+
+    private static WordArena load(List<String> vocabulary) {
+        WordArena arena = new WordArena();
+        for (String word : vocabulary) arena.intern(word);
+        return arena;
+    }
+
+    // Times rounds passes over the queries after one warm-up pass.
+    private static void report(String name, long heapBytes, long indexBytes, String[] queries, int rounds, Lookup lookup) {
+        int hits = 0;
+        for (String query : queries) {
+            if (lookup.find(query) >= 0) hits++;
+        }
+
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String query : queries) sum += lookup.find(query);
+        }
+        double nanos = (double) (System.nanoTime() - start) / ((long) rounds * queries.length);
+        sink = sum;
+
+        System.out.printf("%-16s %12.1f %14d %12s %8d%n",
+            name, nanos, heapBytes, indexBytes < 0 ? "-" : Long.toString(indexBytes), hits);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.IOException;
+
+/*
+
+  Usage: CompactSmartWord wordFile oldMessageFile newMessageFile [targetBytes]
+
+  Description:
+
+  Shows what SmartWord.prune() costs in accuracy at each utility level, so a
+  point on the memory/accuracy curve can be chosen. For each level a fresh
+  model is trained on oldMessageFile, pruned, and then evaluated on
+  newMessageFile the same way EvalSmartWord does. Levels double until the
+  vocabulary is exhausted or, if targetBytes is given, until the estimated
+  footprint fits within it.
+ */
+public class CompactSmartWord {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: CompactSmartWord wordFile oldMessageFile newMessageFile [targetBytes]");
+            System.exit(-1);
+        }
+        long targetBytes = args.length == 4 ? Long.parseLong(args[3]) : 0;
+
+        System.out.printf("%6s %8s %10s %14s %10s %8s%n", "level", "pruned", "words", "est. bytes", "accuracy", "cost");
+
+        double baseline = Double.NaN;
+        for (int level = 1; ; level *= 2) {
+            SmartWord sw = new SmartWord(args[0]);
+            sw.processOldMessages(args[1]);
+            int pruned = level > 1 ? sw.prune(level) : 0;
+            int words = sw.vocabularySize();
+            long bytes = sw.footprint().totalBytes();
+
+            SmartWordEval.Result result = SmartWordEval.evaluate(sw, args[2]);
+            if (Double.isNaN(baseline)) baseline = result.accuracy;
+
+            System.out.printf("%6d %8d %10d %14d %10.4f %8.4f%n",
+                level, pruned, words, bytes, result.accuracy, baseline - result.accuracy);
+
+            if (words == 0 || (targetBytes > 0 && bytes <= targetBytes)) break;
+        }
+    }
+}
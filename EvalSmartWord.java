@@ -11,7 +11,27 @@ import java.util.List;
   Email: tpatanwala2016@my.fit.edu
   Pseudccode: Philip Chan
 
-  Usage: EvalSmartWord oldMessageFile newMessageFile 
+  Usage: EvalSmartWord wordFile oldMessageFile newMessageFile [-footprint] [-offheap] [-perfecthash] [-budget=nanos] [-speculate=width]
+
+  -footprint also prints SmartWord's estimated memory per data structure
+  after preprocessing.
+
+  -offheap copies the trained SmartWord into an OffHeapSmartWord and
+  guesses with that instead. The heap's peak usage is reset once the
+  on-heap model is collected, so the reported memory excludes training
+  and the model.
+
+  -perfecthash puts the dictionary behind a minimal perfect hash (see
+  SmartWord(wordFile, perfectHash)), which uses less index memory but
+  looks words up more slowly.
+
+  -budget=nanos gives each guess a latency budget (see
+  SmartWord.setGuessBudget) and reports the share of guesses that ran
+  out of it. It is ignored with -offheap.
+
+  -speculate=width turns on speculative guessing for the width likeliest
+  next letters (see SmartWord.startSpeculating) and reports its hit
+  rate, CPU time and latency savings. It is ignored with -offheap.
 
   Description:
 
@@ -52,9 +72,29 @@ public class EvalSmartWord
 
     public static void main(String[]args) throws IOException{
 
-	if (args.length != 3) 
+	boolean footprint = false;
+	boolean offHeap = false;
+	boolean perfectHash = false;
+	long budget = 0;
+	int speculate = 0;
+	for (int i = 3; i < args.length; i++)
 	    {
-		System.err.println("Usage: EvalSmartWord wordFile oldMessageFile newMessageFile");
+		if (args[i].equals("-footprint"))
+		    footprint = true;
+		else if (args[i].equals("-offheap"))
+		    offHeap = true;
+		else if (args[i].equals("-perfecthash"))
+		    perfectHash = true;
+		else if (args[i].startsWith("-budget="))
+		    budget = Long.parseLong(args[i].substring("-budget=".length()));
+		else if (args[i].startsWith("-speculate="))
+		    speculate = Integer.parseInt(args[i].substring("-speculate=".length()));
+		else
+		    args = new String[0];
+	    }
+	if (args.length < 3) 
+	    {
+		System.err.println("Usage: EvalSmartWord wordFile oldMessageFile newMessageFile [-footprint] [-offheap] [-perfecthash] [-budget=nanos] [-speculate=width]");
 		System.exit(-1);
 	    }
 
@@ -70,7 +110,7 @@ public class EvalSmartWord
         //Preprocessing in SmartWord
 	System.out.println("Preprocessing in SmartWord...");
         long startPreProcTime = bean.getCurrentThreadCpuTime();
-        SmartWord sw = new SmartWord(args[0]);
+        SmartWord sw = new SmartWord(args[0], perfectHash);
         sw.processOldMessages(args[1]);
         long endPreProcTime = bean.getCurrentThreadCpuTime();
 
@@ -90,6 +130,27 @@ public class EvalSmartWord
 	runtime.gc();
         System.out.println("memory in bytes (not part of score): " + peakMemoryUsage());
 
+	if (footprint)
+	    {
+		System.out.println("SmartWord footprint by structure (estimated):");
+		System.out.print(sw.footprint());
+	    }
+
+	WordPredictor predictor = sw;
+	if (budget > 0 && !offHeap)
+	    sw.setGuessBudget(budget);
+	if (speculate > 0 && !offHeap)
+	    sw.startSpeculating(speculate);
+	if (offHeap)
+	    {
+		OffHeapSmartWord offHeapModel = OffHeapSmartWord.copyOf(sw);
+		System.out.println("off-heap bytes (not part of score): " + offHeapModel.offHeapBytes());
+		predictor = offHeapModel;
+		sw = null;
+		runtime.gc();
+		resetPeakMemoryUsage(); // so the peaks below start after training, without the on-heap model
+	    }
+
         
         double totalPercSkipped = 0.0;
         double totalWords = 0.0;
@@ -122,7 +183,7 @@ public class EvalSmartWord
                     //Record start time of the guess
                     long startTime = bean.getCurrentThreadCpuTime();
                     //Each letter is passed to the SmartWord program to return 3 gussess
-                    String[]guesses = sw.guess(words[indexWord].charAt(indexLetter), indexLetter, indexWord);
+                    String[]guesses = predictor.guess(words[indexWord].charAt(indexLetter), indexLetter, indexWord);
                     //To calculate the time taken for each guess operation
                     long endTime = bean.getCurrentThreadCpuTime();
                     totalElapsedTime = totalElapsedTime + (endTime - startTime);
@@ -143,9 +204,9 @@ public class EvalSmartWord
                     //If the letter entered was the last letter in the word, then pass the correct word to the feedback
 		    startTime = bean.getCurrentThreadCpuTime();
                     if(indexLetter == noOfLettersInWord - 1)
-                        sw.feedback(isCorrectGuess, words[indexWord]);
+                        predictor.feedback(isCorrectGuess, words[indexWord]);
                     else
-                        sw.feedback(isCorrectGuess, correctGuess);
+                        predictor.feedback(isCorrectGuess, correctGuess);
 		    endTime = bean.getCurrentThreadCpuTime();
 		    totalElapsedTime = totalElapsedTime + (endTime - startTime);
 
@@ -190,7 +251,23 @@ public class EvalSmartWord
         //OverAll Score
         System.out.printf("Overall Score: %.4f\n",accuracy*accuracy/Math.sqrt(avgTime * memory));
 
-	SmartWord sw2 = sw;  // keep sw used to avoid garbage collection of sw
+	if (budget > 0 && sw != null)
+	    System.out.printf("Guesses over budget: %.2f%% of %d\n",
+			      100 * sw.metrics.getBudgetOverrunRate(), sw.metrics.getBudgetedGuessCount());
+	if (speculate > 0 && sw != null)
+	    {
+		sw.stopSpeculating();
+		System.out.printf("Speculation hit rate: %.2f%%\n", 100 * sw.metrics.getSpeculationHitRate());
+		System.out.printf("Speculation cpu in seconds: used %s, wasted %s\n",
+				  df.format(sw.metrics.getSpeculationUsedCpuNanos() / 1E9),
+				  df.format(sw.metrics.getSpeculationWastedCpuNanos() / 1E9));
+		System.out.printf("Guess latency in ns: hit %.0f, miss %.0f, reduction %.2f%%\n",
+				  sw.metrics.getSpeculationHitLatencyNanos(), sw.metrics.getSpeculationMissLatencyNanos(),
+				  100 * sw.metrics.getSpeculationLatencyReduction());
+		System.out.printf("Guess lock wait in ns: %.0f\n", sw.metrics.getGuessLockWaitNanos());
+	    }
+
+	WordPredictor sw2 = predictor;  // keep predictor used to avoid garbage collection of it
     }
 
 
@@ -219,4 +296,14 @@ public class EvalSmartWord
     return total;
     }
 
+    // Restarts the peak tracking of the heap pools at their current usage.
+    private static void resetPeakMemoryUsage()
+    {
+    for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans())
+        {
+        if (memoryPoolMXBean.getType() == MemoryType.HEAP)
+            memoryPoolMXBean.resetPeakUsage();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/*
+
+  Usage: GenerateCorpus outputPrefix tokens seed [-new=tokens] [-dictionary=wordFile] sampleMessageFile...
+
+  Description:
+
+  Writes a synthetic word list and old/new message files of any size, for
+  measuring how SmartWord's time and memory grow with the data. The output
+  is outputPrefix_words.txt, outputPrefix_old.txt with the given number of
+  tokens, and outputPrefix_new.txt with tokens / 10 (or -new) tokens, and
+  can be passed straight to EvalSmartWord, the other tools, or a
+  corpora.manifest line, which is printed at the end. The same arguments
+  always produce the same files.
+
+  The generator is fitted to the sample message files (e.g. trump_old.txt
+  clinton_old.txt):
+
+     * word frequencies follow a Zipf law with the exponent fitted to the
+       samples' rank/frequency curve; the vocabulary grows with the token
+       count by Heaps' law fitted the same way. Its most frequent words are
+       the samples' words in rank order, and the rest are made-up words
+       with the samples' word lengths and letter frequencies.
+
+     * each word's successors, and each word pair's, are a fixed Zipf
+       ranked list of words derived by hashing the context, so bigram and
+       trigram counts are Zipf within a context with the fitted exponent
+       and fan-out. A word follows its trigram or bigram context with the
+       probability that a sample n-gram token is a repeated n-gram, and is
+       otherwise drawn from the unigram distribution.
+
+     * line lengths are drawn from the samples' line lengths.
+
+  The word list holds the whole vocabulary, or with -dictionary the share of
+  it matching how many sample words that word file covers.
+ */
+public class GenerateCorpus {
+
+    // Successor lists are never longer than this.
+    private static final int MAX_FAN_OUT = 1000;
+
+    // Parameters fitted to the sample files.
+    private double zipfExponent;
+    private double heapsK;
+    private double heapsBeta;
+    private double successorExponent;
+    private int fanOut;
+    private double bigramShare;
+    private double trigramShare;
+    private double dictionaryShare = 1.0;
+    private final List<String> sampleWords = new ArrayList<>();
+    private final List<Integer> wordLengths = new ArrayList<>();
+    private final List<Integer> lineLengths = new ArrayList<>();
+    private final double[] letterCumulative = new double[26];
+
+    // Generated vocabulary in rank order, and the cumulative distributions sampled from.
+    private String[] vocabulary;
+    private double[] wordCumulative;
+    private double[] successorCumulative;
+
+    public static void main(String[] args) throws IOException {
+        List<String> samples = new ArrayList<>();
+        long newTokens = -1;
+        String dictionary = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("-new=")) {
+                newTokens = Long.parseLong(args[i].substring("-new=".length()));
+            } else if (args[i].startsWith("-dictionary=")) {
+                dictionary = args[i].substring("-dictionary=".length());
+            } else {
+                samples.add(args[i]);
+            }
+        }
+        if (args.length < 4 || samples.isEmpty()) {
+            System.err.println("Usage: GenerateCorpus outputPrefix tokens seed [-new=tokens] [-dictionary=wordFile] sampleMessageFile...");
+            System.exit(-1);
+        }
+        String prefix = args[0];
+        long tokens = Long.parseLong(args[1]);
+        long seed = Long.parseLong(args[2]);
+        if (newTokens < 0) newTokens = Math.max(1, tokens / 10);
+
+        GenerateCorpus generator = new GenerateCorpus();
+        generator.fit(samples, dictionary);
+        generator.buildVocabulary(tokens, new SplittableRandom(seed));
+        System.out.print(generator.describe());
+
+        generator.writeWords(prefix + "_words.txt", seed);
+        generator.writeMessages(prefix + "_old.txt", tokens, new SplittableRandom(seed + 1));
+        generator.writeMessages(prefix + "_new.txt", newTokens, new SplittableRandom(seed + 2));
+
+        System.out.println("manifest line:");
+        System.out.println(prefix + "_words.txt " + prefix + "_old.txt " + prefix + "_new.txt");
+    }
+
+    // Counts words, n-grams, lengths and letters in the samples and fits the generator's parameters to them.
+    private void fit(List<String> samples, String dictionary) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Map<String, Integer>> bigrams = new HashMap<>();
+        Map<String, Map<String, Integer>> trigrams = new HashMap<>();
+        long[] letters = new long[26];
+        List<double[]> growth = new ArrayList<>();
+        long total = 0;
+
+        for (String sample : samples) {
+            for (String line : Files.readAllLines(Paths.get(sample), StandardCharsets.UTF_8)) {
+                String previous = null;
+                String prePrevious = null;
+                int length = 0;
+                for (String token : line.trim().split("\\s+")) {
+                    String word = token.replaceAll("[^a-zA-Z]", "").toLowerCase();
+                    if (word.isEmpty()) continue;
+                    length++;
+                    total++;
+                    if (counts.merge(word, 1, Integer::sum) == 1) {
+                        wordLengths.add(word.length());
+                        for (int i = 0; i < word.length(); i++) letters[word.charAt(i) - 'a']++;
+                    }
+                    if (previous != null) {
+                        bigrams.computeIfAbsent(previous, k -> new HashMap<>()).merge(word, 1, Integer::sum);
+                    }
+                    if (prePrevious != null) {
+                        trigrams.computeIfAbsent(prePrevious + ' ' + previous, k -> new HashMap<>()).merge(word, 1, Integer::sum);
+                    }
+                    prePrevious = previous;
+                    previous = word;
+                    if (Long.bitCount(total) == 1) growth.add(new double[] {Math.log(total), Math.log(counts.size())});
+                }
+                if (length > 0) lineLengths.add(length);
+            }
+        }
+        if (total == 0) throw new IOException("sample files contain no words");
+        growth.add(new double[] {Math.log(total), Math.log(counts.size())});
+
+        // Zipf exponent from the rank/frequency curve, leaving out the noisy tail of words seen once.
+        sampleWords.addAll(counts.keySet());
+        sampleWords.sort((a, b) -> counts.get(a).equals(counts.get(b)) ? a.compareTo(b) : counts.get(b) - counts.get(a));
+        List<double[]> ranks = new ArrayList<>();
+        for (int r = 0; r < sampleWords.size() && counts.get(sampleWords.get(r)) > 1; r++) {
+            ranks.add(new double[] {Math.log(r + 1), Math.log(counts.get(sampleWords.get(r)))});
+        }
+        zipfExponent = ranks.size() < 2 ? 1.0 : -slope(ranks)[0];
+
+        // Heaps' law V = K * N^beta from the vocabulary size at each power of two tokens.
+        double[] heaps = growth.size() < 2 ? new double[] {1.0, 0.0} : slope(growth);
+        heapsBeta = heaps[0];
+        heapsK = Math.exp(heaps[1]);
+
+        // Within-context successor ranks, summed over all bigram contexts.
+        long[] byRank = new long[MAX_FAN_OUT];
+        long weightedFanOut = 0;
+        long contextTokens = 0;
+        for (Map<String, Integer> next : bigrams.values()) {
+            List<Integer> successorCounts = new ArrayList<>(next.values());
+            successorCounts.sort((a, b) -> b - a);
+            int contextCount = 0;
+            for (int r = 0; r < successorCounts.size() && r < MAX_FAN_OUT; r++) {
+                byRank[r] += successorCounts.get(r);
+                contextCount += successorCounts.get(r);
+            }
+            weightedFanOut += (long) Math.min(next.size(), MAX_FAN_OUT) * contextCount;
+            contextTokens += contextCount;
+        }
+        List<double[]> successorRanks = new ArrayList<>();
+        for (int r = 0; r < MAX_FAN_OUT && byRank[r] > 0; r++) {
+            successorRanks.add(new double[] {Math.log(r + 1), Math.log(byRank[r])});
+        }
+        successorExponent = successorRanks.size() < 2 ? 1.0 : -slope(successorRanks)[0];
+        fanOut = (int) Math.max(2, Math.min(MAX_FAN_OUT, contextTokens == 0 ? 2 : weightedFanOut / contextTokens));
+
+        bigramShare = repeatedShare(bigrams);
+        trigramShare = repeatedShare(trigrams);
+
+        long letterTotal = 0;
+        for (long count : letters) letterTotal += count;
+        double sum = 0;
+        for (int i = 0; i < 26; i++) {
+            sum += (double) letters[i] / letterTotal;
+            letterCumulative[i] = sum;
+        }
+        letterCumulative[25] = 1.0;
+
+        if (dictionary != null) {
+            Set<String> known = new HashSet<>();
+            for (String line : Files.readAllLines(Paths.get(dictionary), StandardCharsets.UTF_8)) {
+                known.add(line.toLowerCase().trim());
+            }
+            int covered = 0;
+            for (String word : sampleWords) {
+                if (known.contains(word)) covered++;
+            }
+            dictionaryShare = (double) covered / sampleWords.size();
+        }
+    }
+
+    // Share of n-gram tokens whose n-gram occurs more than once.
+    private static double repeatedShare(Map<String, Map<String, Integer>> ngrams) {
+        long repeated = 0;
+        long all = 0;
+        for (Map<String, Integer> next : ngrams.values()) {
+            for (int count : next.values()) {
+                all += count;
+                if (count > 1) repeated += count;
+            }
+        }
+        return all == 0 ? 0.0 : (double) repeated / all;
+    }
+
+    // Least-squares slope and intercept of y on x for points {x, y}.
+    private static double[] slope(List<double[]> points) {
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (double[] p : points) {
+            sx += p[0];
+            sy += p[1];
+            sxx += p[0] * p[0];
+            sxy += p[0] * p[1];
+        }
+        int n = points.size();
+        double b = (n * sxy - sx * sy) / (n * sxx - sx * sx);
+        return new double[] {b, (sy - b * sx) / n};
+    }
+
+    // Sizes the vocabulary for the token count by Heaps' law and fills it, sample words first.
+    private void buildVocabulary(long tokens, SplittableRandom random) {
+        long size = Math.max(sampleWords.size(), Math.round(heapsK * Math.pow(tokens, heapsBeta)));
+        if (size > Integer.MAX_VALUE / 16) throw new IllegalArgumentException("vocabulary too large: " + size);
+        vocabulary = new String[(int) size];
+
+        Set<String> used = new HashSet<>(sampleWords);
+        int n = 0;
+        for (String word : sampleWords) vocabulary[n++] = word;
+        StringBuilder word = new StringBuilder();
+        while (n < vocabulary.length) {
+            word.setLength(0);
+            int length = wordLengths.get(random.nextInt(wordLengths.size()));
+            for (int i = 0; i < length; i++) word.append((char) ('a' + sample(letterCumulative, random.nextDouble())));
+            if (used.add(word.toString())) vocabulary[n++] = word.toString();
+        }
+
+        wordCumulative = zipfCumulative(vocabulary.length, zipfExponent);
+        successorCumulative = zipfCumulative(fanOut, successorExponent);
+    }
+
+    // Cumulative Zipf distribution over ranks 1..n.
+    private static double[] zipfCumulative(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int r = 0; r < n; r++) {
+            sum += Math.pow(r + 1, -exponent);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < n; r++) cumulative[r] /= sum;
+        cumulative[n - 1] = 1.0;
+        return cumulative;
+    }
+
+    // Index of the first cumulative value above u.
+    private static int sample(double[] cumulative, double u) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] <= u) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private String describe() {
+        return String.format("zipf exponent %.3f, heaps K %.2f beta %.3f, vocabulary %d%n"
+            + "successor exponent %.3f, fan-out %d, bigram share %.3f, trigram share %.3f, dictionary share %.3f%n",
+            zipfExponent, heapsK, heapsBeta, vocabulary.length,
+            successorExponent, fanOut, bigramShare, trigramShare, dictionaryShare);
+    }
+
+    // Writes the vocabulary, keeping each word with probability dictionaryShare decided by a hash of the seed and rank.
+    private void writeWords(String file, long seed) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            for (int r = 0; r < vocabulary.length; r++) {
+                if (unit(mix(seed ^ mix(r))) < dictionaryShare) {
+                    out.write(vocabulary[r]);
+                    out.newLine();
+                }
+            }
+        }
+    }
+
+    // Writes lines of generated words until tokens words are written.
+    private void writeMessages(String file, long tokens, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written < tokens) {
+                int length = (int) Math.min(lineLengths.get(random.nextInt(lineLengths.size())), tokens - written);
+                int previous = -1;
+                int prePrevious = -1;
+                for (int i = 0; i < length; i++) {
+                    int word = nextWord(prePrevious, previous, random);
+                    if (i > 0) out.write(' ');
+                    out.write(vocabulary[word]);
+                    prePrevious = previous;
+                    previous = word;
+                }
+                out.newLine();
+                written += length;
+            }
+        }
+    }
+
+    // Draws the next word: from the trigram context, the bigram context, or the unigram distribution.
+    private int nextWord(int prePrevious, int previous, SplittableRandom random) {
+        double choice = random.nextDouble();
+        long context;
+        if (prePrevious >= 0 && choice < trigramShare) {
+            context = mix(mix(prePrevious) + previous);
+        } else if (previous >= 0 && choice < bigramShare) {
+            context = mix(previous);
+        } else {
+            return sample(wordCumulative, random.nextDouble());
+        }
+
+        // The k-th successor of a context is a fixed unigram draw seeded by the context and k.
+        int k = sample(successorCumulative, random.nextDouble());
+        return sample(wordCumulative, unit(mix(context * 31 + k)));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    // Maps a hash onto [0, 1).
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/*
+
+  Usage: KeystrokeTrace newMessageFile traceFile
+
+  Description:
+
+  Records the keystrokes EvalSmartWord would type for newMessageFile into a
+  compact binary trace, so that replays (see ReplayTrace) skip the text
+  handling and regexes and cost the same every run.
+
+  A keystroke is (letter, letterPosition, wordPosition, expected word). All
+  keystrokes of a word share the word and its position, and replay stops a
+  word early once a guess matches, so the trace stores each word once, and
+  its position only as whether it starts a line:
+
+     header    int magic "SWTR", byte version
+     word      varint (length * 2 + (starts a line ? 1 : 0)) + 1, length ASCII letters
+     end       varint 0
+
+  Words are split and stripped of punctuation exactly as EvalSmartWord does,
+  including words left empty, which count towards accuracy.
+ */
+public class KeystrokeTrace {
+
+    private static final int MAGIC = 0x53575452;
+    private static final int VERSION = 1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: KeystrokeTrace newMessageFile traceFile");
+            System.exit(-1);
+        }
+        long words = record(args[0], args[1]);
+        System.out.println(words + " words recorded to " + args[1]);
+    }
+
+    // Writes the trace of messageFile to traceFile and returns the number of words in it.
+    public static long record(String messageFile, String traceFile) throws IOException {
+        long count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(messageFile));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(traceFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.replaceAll("\\s+", " ").split(" ");
+                for (int indexWord = 0; indexWord < words.length; indexWord++) {
+                    String word = words[indexWord].replaceAll("[^a-zA-Z]", "");
+                    writeVarint(out, (word.length() << 1 | (indexWord == 0 ? 1 : 0)) + 1);
+                    out.writeBytes(word);
+                    count++;
+                }
+            }
+            writeVarint(out, 0);
+        }
+        return count;
+    }
+
+    // Types every word of traceFile into sw as SmartWordEval.evaluate would type the message file it was recorded
+    // from; if log is not null, writes a line per guess to it.
+    public static SmartWordEval.Result replay(WordPredictor sw, String traceFile, PrintWriter log) throws IOException {
+        SmartWordEval.Tally tally = new SmartWordEval.Tally();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(traceFile), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException(traceFile + " is not a keystroke trace");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException(traceFile + " has unsupported trace version " + version);
+
+            byte[] letters = new byte[64];
+            int indexWord = -1;
+            int code;
+            while ((code = readVarint(in) - 1) >= 0) {
+                int length = code >>> 1;
+                indexWord = (code & 1) != 0 ? 0 : indexWord + 1;
+                if (letters.length < length) letters = new byte[length * 2];
+                in.readFully(letters, 0, length);
+                String word = new String(letters, 0, length, StandardCharsets.US_ASCII);
+                SmartWordEval.typeWord(sw, word, indexWord, tally, log);
+            }
+        }
+        return tally.result();
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint in trace");
+    }
+}
@@ -0,0 +1,605 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+
+  A SmartWord engine whose trie, word table and n-gram counts live outside
+  the Java heap.
+
+  The model is trained as a normal SmartWord and then copied with copyOf()
+  into one off-heap region, either a direct buffer or a memory-mapped file.
+  guess() and feedback() read and update that region in place, following
+  the same rules as SmartWord, so both engines give the same guesses for
+  the same keystrokes. The heap only holds this object, a few scratch
+  arrays and the Strings returned as guesses. A mapped model can be reopened with open() after a restart and
+  continues from the counts and context it had.
+
+  Region layout (ints in native byte order, sections aligned to 8 bytes):
+
+     header    HEADER_INTS ints, see the H_ constants
+     nodes     nodeCapacity records of 26 child indexes (0 = none, the
+               root is node 0), the suggestion count and suggestionCap
+               suggestion word ids
+     offsets   wordCapacity + 1 start offsets of each word in the arena
+     freqs     wordCapacity word frequencies
+     index     open-addressed slots of word id + 1 (0 = empty), hashed on
+               the word's text
+     arena     the bytes of every word, back to back
+     bigrams   open-addressed slots of {previous id + 1, word id, count}
+     trigrams  open-addressed slots of {pre-previous id + 1, previous id, word id, count}
+
+  Capacities are fixed when the region is built, with room for as many new
+  n-grams again and for half as many new words again (at least 1024 of
+  each). Like SmartWord's, feedback never adds trie nodes, but it does learn
+  words that are not in the trie and lists them under the nodes of their
+  path that exist. New words and n-grams are dropped once their room is
+  used up, and only then do the two engines diverge.
+
+  close() forces a mapped region to disk and detaches the buffers; any later
+  call throws IllegalStateException. On this JDK the memory itself is
+  returned when the detached buffers are garbage collected.
+ */
+public class OffHeapSmartWord implements WordPredictor, AutoCloseable {
+
+    private static final int MAGIC = 0x53574f48;  // "SWOH"
+    private static final int VERSION = 2;
+
+    // Header slots.
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 1;
+    private static final int H_NODE_CAPACITY = 2;
+    private static final int H_NODE_COUNT = 3;
+    private static final int H_SUGGESTION_CAP = 4;
+    private static final int H_WORD_CAPACITY = 5;
+    private static final int H_WORD_COUNT = 6;
+    private static final int H_ARENA_CAPACITY = 7;
+    private static final int H_ARENA_USED = 8;
+    private static final int H_BIGRAM_SLOTS = 9;
+    private static final int H_TRIGRAM_SLOTS = 10;
+    private static final int H_CORRECT_BONUS = 11;
+    private static final int H_WRONG_PENALTY = 12;
+    private static final int H_LAST_WORD = 13;
+    private static final int H_SECOND_LAST_WORD = 14;
+    private static final int H_BIGRAMS_USED = 15;
+    private static final int H_TRIGRAMS_USED = 16;
+    private static final int H_INDEX_SLOTS = 17;
+    private static final int HEADER_INTS = 18;
+
+    // Node record fields after the 26 children.
+    private static final int N_SUGGESTION_COUNT = 26;
+    private static final int N_SUGGESTIONS = 27;
+
+    // Context id before any word has been seen.
+    private static final int NO_WORD = -1;
+
+    private ByteBuffer region;
+    private IntBuffer header;
+    private IntBuffer nodes;
+    private IntBuffer offsets;
+    private IntBuffer freqs;
+    private IntBuffer index;
+    private ByteBuffer arena;
+    private IntBuffer bigrams;
+    private IntBuffer trigrams;
+
+    private final int nodeStride;
+    private final int suggestionCap;
+    private final int indexMask;
+    private final int bigramMask;
+    private final int trigramMask;
+
+    // Node reached by the letters typed so far, or -1 once the prefix leaves the trie.
+    private int currentNode = -1;
+    private final String[] guesses = new String[3];
+    private final int[] ranked;
+    private final int[] scores;
+    // A suggestion list plus the word being added to it, while updateBestSuggestions evicts one.
+    private final int[] candidates;
+
+    // New words and n-grams that did not fit.
+    private long droppedWords = 0;
+    private long droppedNgrams = 0;
+
+    // Copies a trained model into direct (off-heap) memory.
+    public static OffHeapSmartWord copyOf(SmartWord source) {
+        return copyOf(source, null);
+    }
+
+    // Copies a trained model into a memory-mapped file, creating or replacing it; updates are written through to it.
+    public static OffHeapSmartWord copyOf(SmartWord source, Path file) {
+        int[] params = source.parameters();
+        int suggestionCap = params[2];
+        int words = source.vocabularySize();
+        int wordCapacity = words + Math.max(1024, words / 2);
+        int nodeCapacity = (int) source.trieNodeCount();
+        long arenaBytes = source.vocabularyChars() + 16L * (wordCapacity - words);
+        int indexSlots = Integer.highestOneBit(wordCapacity) * 4;
+        int bigramSlots = slotsFor(source.bigramCount());
+        int trigramSlots = slotsFor(source.trigramCount());
+
+        long size = layout(nodeCapacity, suggestionCap, wordCapacity, arenaBytes, indexSlots, bigramSlots, trigramSlots)[7];
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Model needs " + size + " bytes, more than one region can hold");
+        }
+
+        ByteBuffer region = file == null ? ByteBuffer.allocateDirect((int) size) : map(file, size, true);
+        IntBuffer header = region.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+        header.put(H_MAGIC, MAGIC);
+        header.put(H_VERSION, VERSION);
+        header.put(H_NODE_CAPACITY, nodeCapacity);
+        header.put(H_NODE_COUNT, 1);
+        header.put(H_SUGGESTION_CAP, suggestionCap);
+        header.put(H_WORD_CAPACITY, wordCapacity);
+        header.put(H_WORD_COUNT, 0);
+        header.put(H_ARENA_CAPACITY, (int) arenaBytes);
+        header.put(H_ARENA_USED, 0);
+        header.put(H_BIGRAM_SLOTS, bigramSlots);
+        header.put(H_TRIGRAM_SLOTS, trigramSlots);
+        header.put(H_CORRECT_BONUS, params[0]);
+        header.put(H_WRONG_PENALTY, params[1]);
+        header.put(H_LAST_WORD, NO_WORD);
+        header.put(H_SECOND_LAST_WORD, NO_WORD);
+        header.put(H_BIGRAMS_USED, 0);
+        header.put(H_TRIGRAMS_USED, 0);
+        header.put(H_INDEX_SLOTS, indexSlots);
+
+        OffHeapSmartWord model = new OffHeapSmartWord(region);
+        model.clearRoot();
+        source.exportTo(model);
+        return model;
+    }
+
+    // Reopens a model previously written by copyOf(source, file).
+    public static OffHeapSmartWord open(Path file) throws IOException {
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+        }
+        ByteBuffer region = map(file, size, false);
+        IntBuffer header = region.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+        if (size < HEADER_INTS * 4 || header.get(H_MAGIC) != MAGIC || header.get(H_VERSION) != VERSION) {
+            throw new IOException("Not an off-heap SmartWord model: " + file);
+        }
+        return new OffHeapSmartWord(region);
+    }
+
+    // Views each section of an initialized region.
+    private OffHeapSmartWord(ByteBuffer region) {
+        this.region = region;
+        header = region.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+        suggestionCap = header.get(H_SUGGESTION_CAP);
+        nodeStride = N_SUGGESTIONS + suggestionCap;
+        int indexSlots = header.get(H_INDEX_SLOTS);
+        int bigramSlots = header.get(H_BIGRAM_SLOTS);
+        int trigramSlots = header.get(H_TRIGRAM_SLOTS);
+        indexMask = indexSlots - 1;
+        bigramMask = bigramSlots - 1;
+        trigramMask = trigramSlots - 1;
+
+        long[] at = layout(header.get(H_NODE_CAPACITY), suggestionCap, header.get(H_WORD_CAPACITY),
+            header.get(H_ARENA_CAPACITY), indexSlots, bigramSlots, trigramSlots);
+        nodes = section(at[0], at[1]).asIntBuffer();
+        offsets = section(at[1], at[2]).asIntBuffer();
+        freqs = section(at[2], at[3]).asIntBuffer();
+        index = section(at[3], at[4]).asIntBuffer();
+        arena = section(at[4], at[5]);
+        bigrams = section(at[5], at[6]).asIntBuffer();
+        trigrams = section(at[6], at[7]).asIntBuffer();
+
+        ranked = new int[suggestionCap];
+        scores = new int[suggestionCap];
+        candidates = new int[suggestionCap + 1];
+    }
+
+    // Byte offsets of the node, offset, frequency, index, arena, bigram and trigram sections, and the total size.
+    private static long[] layout(int nodeCapacity, int suggestionCap, int words, long arenaBytes, int indexSlots,
+                                 int bigramSlots, int trigramSlots) {
+        long[] at = new long[8];
+        at[0] = HEADER_INTS * 4;
+        at[1] = align(at[0] + (long) nodeCapacity * (N_SUGGESTIONS + suggestionCap) * 4);
+        at[2] = align(at[1] + (words + 1L) * 4);
+        at[3] = align(at[2] + words * 4L);
+        at[4] = align(at[3] + indexSlots * 4L);
+        at[5] = align(at[4] + arenaBytes);
+        at[6] = align(at[5] + bigramSlots * 3L * 4);
+        at[7] = align(at[6] + trigramSlots * 4L * 4);
+        return at;
+    }
+
+    private ByteBuffer section(long from, long to) {
+        return region.duplicate().position((int) from).limit((int) to).slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    // Table size for count entries: a power of two with room for as many again before it is three quarters full.
+    private static int slotsFor(long count) {
+        int slots = 64;
+        while (slots * 3L / 4 < count * 2 + 1024) slots <<= 1;
+        return slots;
+    }
+
+    private static MappedByteBuffer map(Path file, long size, boolean create) {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot map " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void clearRoot() {
+        for (int i = 0; i < nodeStride; i++) nodes.put(i, 0);
+    }
+
+    // Stores a vocabulary word, and builds its trie path if it is in the source trie. Words must be added in the
+    // source's id order.
+    void addWord(String word, int frequency, boolean inTrie) {
+        if (appendWord(word) < 0) throw new IllegalStateException("Off-heap word table is full");
+        freqs.put(header.get(H_WORD_COUNT) - 1, frequency);
+        if (!inTrie) return;
+
+        int node = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int slot = node * nodeStride + word.charAt(i) - 'a';
+            int child = nodes.get(slot);
+            if (child == 0) {
+                child = header.get(H_NODE_COUNT);
+                if (child == header.get(H_NODE_CAPACITY)) throw new IllegalStateException("Off-heap trie is full");
+                header.put(H_NODE_COUNT, child + 1);
+                int base = child * nodeStride;
+                for (int j = 0; j < nodeStride; j++) nodes.put(base + j, 0);
+                nodes.put(slot, child);
+            }
+            node = child;
+        }
+    }
+
+    // Adds a word with frequency 0 to the word table and its index; returns its id, or -1 if there is no room.
+    private int appendWord(String word) {
+        int id = header.get(H_WORD_COUNT);
+        int start = header.get(H_ARENA_USED);
+        if (id == header.get(H_WORD_CAPACITY) || start + word.length() > header.get(H_ARENA_CAPACITY)) return -1;
+
+        for (int i = 0; i < word.length(); i++) {
+            arena.put(start + i, (byte) word.charAt(i));
+        }
+        offsets.put(id, start);
+        offsets.put(id + 1, start + word.length());
+        freqs.put(id, 0);
+        header.put(H_ARENA_USED, start + word.length());
+        header.put(H_WORD_COUNT, id + 1);
+
+        int slot = hash(PerfectHash.hash(word)) & indexMask;
+        while (index.get(slot) != 0) slot = (slot + 1) & indexMask;
+        index.put(slot, id + 1);
+        return id;
+    }
+
+    // Stores the suggestion list for the node reached by prefix.
+    void setSuggestions(String prefix, List<String> suggestions) {
+        int node = findNode(prefix);
+        if (node < 0) return;
+
+        int base = node * nodeStride;
+        int count = 0;
+        for (String suggestion : suggestions) {
+            int id = wordId(suggestion);
+            if (id >= 0 && count < suggestionCap) {
+                nodes.put(base + N_SUGGESTIONS + count++, id);
+            }
+        }
+        nodes.put(base + N_SUGGESTION_COUNT, count);
+    }
+
+    void addBigram(String previousWord, String word, int count) {
+        int a = wordId(previousWord);
+        int b = wordId(word);
+        if (a >= 0 && b >= 0) addBigram(a, b, count);
+    }
+
+    void addTrigram(String prePreviousWord, String previousWord, String word, int count) {
+        int a = wordId(prePreviousWord);
+        int b = wordId(previousWord);
+        int c = wordId(word);
+        if (a >= 0 && b >= 0 && c >= 0) addTrigram(a, b, c, count);
+    }
+
+    void setContext(String lastWord, String secondLastWord) {
+        header.put(H_LAST_WORD, lastWord == null ? NO_WORD : wordId(lastWord));
+        header.put(H_SECOND_LAST_WORD, secondLastWord == null ? NO_WORD : wordId(secondLastWord));
+    }
+
+    // Generates guesses for the current word being typed, reading the off-heap trie in place.
+    public synchronized String[] guess(final char letter, final int letterPosition, final int wordPosition) {
+        ensureOpen();
+        if (letterPosition == 0) currentNode = 0;
+
+        if (letter < 'a' || letter > 'z' || currentNode < 0) {
+            currentNode = -1;
+            Arrays.fill(guesses, null);
+            return guesses;
+        }
+
+        int child = nodes.get(currentNode * nodeStride + letter - 'a');
+        currentNode = child == 0 ? -1 : child;
+        if (currentNode < 0) {
+            Arrays.fill(guesses, null);
+            return guesses;
+        }
+
+        int count = rank(currentNode);
+        for (int i = 0; i < 3; i++) {
+            guesses[i] = i < count ? word(ranked[i]) : null;
+        }
+        return guesses;
+    }
+
+    // Orders a node's suggestions by frequency, then by bigram and trigram context; returns how many there are.
+    private int rank(int node) {
+        int base = node * nodeStride;
+        int count = nodes.get(base + N_SUGGESTION_COUNT);
+
+        // Insertion sort by frequency, highest first; lists are at most suggestionCap long.
+        for (int i = 0; i < count; i++) {
+            int id = nodes.get(base + N_SUGGESTIONS + i);
+            int freq = freqs.get(id);
+            int j = i;
+            while (j > 0 && freqs.get(ranked[j - 1]) < freq) {
+                ranked[j] = ranked[j - 1];
+                j--;
+            }
+            ranked[j] = id;
+        }
+
+        int lastWord = header.get(H_LAST_WORD);
+        int secondLastWord = header.get(H_SECOND_LAST_WORD);
+        if (lastWord < 0 || secondLastWord < 0) return count;
+
+        // Stable re-sort by combined n-gram score.
+        for (int i = 0; i < count; i++) {
+            int id = ranked[i];
+            int score = bigramCount(lastWord, id) + trigramCount(secondLastWord, lastWord, id);
+            int j = i;
+            while (j > 0 && scores[j - 1] < score) {
+                ranked[j] = ranked[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            ranked[j] = id;
+            scores[j] = score;
+        }
+        return count;
+    }
+
+    // Updates frequencies, suggestion lists and n-gram counts in place, as SmartWord.feedback does.
+    public synchronized void feedback(final boolean isCorrectGuess, final String correctWord) {
+        ensureOpen();
+        if (correctWord == null || correctWord.isEmpty()) return;
+        for (int i = 0; i < correctWord.length(); i++) {
+            char c = correctWord.charAt(i);
+            if (c < 'a' || c > 'z') return;
+        }
+
+        int id = wordId(correctWord);
+        if (id < 0) {
+            id = appendWord(correctWord);
+            if (id < 0) droppedWords++;
+        }
+        int lastWord = header.get(H_LAST_WORD);
+        int secondLastWord = header.get(H_SECOND_LAST_WORD);
+
+        if (id >= 0) {
+            int adjustment = isCorrectGuess ? header.get(H_CORRECT_BONUS) : -header.get(H_WRONG_PENALTY);
+            freqs.put(id, Math.max(0, freqs.get(id) + adjustment));
+            updateBestSuggestions(correctWord, id);
+
+            if (lastWord >= 0) addBigram(lastWord, id, 1);
+            if (secondLastWord >= 0 && lastWord >= 0) addTrigram(secondLastWord, lastWord, id, 1);
+        }
+
+        header.put(H_SECOND_LAST_WORD, lastWord);
+        header.put(H_LAST_WORD, id);
+    }
+
+    // Adds a word to the suggestion list of every node on its path that exists. A list that grows past suggestionCap
+    // is sorted by frequency (stably, keeping the stored order among ties) and its last entry dropped, the same
+    // eviction SmartWord's trie makes, so both keep the same lists in the same order.
+    private void updateBestSuggestions(String word, int id) {
+        int node = 0;
+        for (int i = 0; i < word.length(); i++) {
+            node = nodes.get(node * nodeStride + word.charAt(i) - 'a');
+            if (node == 0) return;
+
+            int base = node * nodeStride;
+            int count = nodes.get(base + N_SUGGESTION_COUNT);
+            boolean present = false;
+            for (int j = 0; j < count && !present; j++) {
+                present = nodes.get(base + N_SUGGESTIONS + j) == id;
+            }
+            if (present) continue;
+
+            if (count < suggestionCap) {
+                nodes.put(base + N_SUGGESTIONS + count, id);
+                nodes.put(base + N_SUGGESTION_COUNT, count + 1);
+                continue;
+            }
+
+            for (int j = 0; j < count; j++) {
+                candidates[j] = nodes.get(base + N_SUGGESTIONS + j);
+            }
+            candidates[count] = id;
+            for (int j = 1; j <= count; j++) {
+                int candidate = candidates[j];
+                int freq = freqs.get(candidate);
+                int k = j;
+                while (k > 0 && freqs.get(candidates[k - 1]) < freq) {
+                    candidates[k] = candidates[k - 1];
+                    k--;
+                }
+                candidates[k] = candidate;
+            }
+            for (int j = 0; j < count; j++) {
+                nodes.put(base + N_SUGGESTIONS + j, candidates[j]);
+            }
+        }
+    }
+
+    // Node reached by prefix, or -1.
+    private int findNode(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int index = prefix.charAt(i) - 'a';
+            if (index < 0 || index >= 26) return -1;
+            node = nodes.get(node * nodeStride + index);
+            if (node == 0) return -1;
+        }
+        return node;
+    }
+
+    // Id of a known word, or -1.
+    private int wordId(String word) {
+        for (int slot = hash(PerfectHash.hash(word)) & indexMask; ; slot = (slot + 1) & indexMask) {
+            int id = index.get(slot) - 1;
+            if (id < 0) return -1;
+            if (matches(id, word)) return id;
+        }
+    }
+
+    private boolean matches(int id, String word) {
+        int start = offsets.get(id);
+        if (offsets.get(id + 1) - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (arena.get(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String word(int id) {
+        int start = offsets.get(id);
+        byte[] bytes = new byte[offsets.get(id + 1) - start];
+        arena.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private int bigramCount(int a, int b) {
+        if (a < 0) return 0;
+        for (int slot = hash(((long) a << 32) | b) & bigramMask; ; slot = (slot + 1) & bigramMask) {
+            int key = bigrams.get(slot * 3);
+            if (key == 0) return 0;
+            if (key == a + 1 && bigrams.get(slot * 3 + 1) == b) return bigrams.get(slot * 3 + 2);
+        }
+    }
+
+    private void addBigram(int a, int b, int count) {
+        for (int slot = hash(((long) a << 32) | b) & bigramMask; ; slot = (slot + 1) & bigramMask) {
+            int key = bigrams.get(slot * 3);
+            if (key == a + 1 && bigrams.get(slot * 3 + 1) == b) {
+                bigrams.put(slot * 3 + 2, bigrams.get(slot * 3 + 2) + count);
+                return;
+            }
+            if (key == 0) {
+                if (!reserveSlot(H_BIGRAMS_USED, bigramMask)) return;
+                bigrams.put(slot * 3, a + 1);
+                bigrams.put(slot * 3 + 1, b);
+                bigrams.put(slot * 3 + 2, count);
+                return;
+            }
+        }
+    }
+
+    private int trigramCount(int a, int b, int c) {
+        if (a < 0 || b < 0) return 0;
+        for (int slot = hash((((long) a << 32) | b) * 31 + c) & trigramMask; ; slot = (slot + 1) & trigramMask) {
+            int key = trigrams.get(slot * 4);
+            if (key == 0) return 0;
+            if (key == a + 1 && trigrams.get(slot * 4 + 1) == b && trigrams.get(slot * 4 + 2) == c) {
+                return trigrams.get(slot * 4 + 3);
+            }
+        }
+    }
+
+    private void addTrigram(int a, int b, int c, int count) {
+        for (int slot = hash((((long) a << 32) | b) * 31 + c) & trigramMask; ; slot = (slot + 1) & trigramMask) {
+            int key = trigrams.get(slot * 4);
+            if (key == a + 1 && trigrams.get(slot * 4 + 1) == b && trigrams.get(slot * 4 + 2) == c) {
+                trigrams.put(slot * 4 + 3, trigrams.get(slot * 4 + 3) + count);
+                return;
+            }
+            if (key == 0) {
+                if (!reserveSlot(H_TRIGRAMS_USED, trigramMask)) return;
+                trigrams.put(slot * 4, a + 1);
+                trigrams.put(slot * 4 + 1, b);
+                trigrams.put(slot * 4 + 2, c);
+                trigrams.put(slot * 4 + 3, count);
+                return;
+            }
+        }
+    }
+
+    // Counts a new entry against a table's load limit, kept in the given header slot.
+    private boolean reserveSlot(int usedSlot, int mask) {
+        int used = header.get(usedSlot);
+        if (used >= (mask + 1) / 4 * 3) {
+            droppedNgrams++;
+            return false;
+        }
+        header.put(usedSlot, used + 1);
+        return true;
+    }
+
+    // New words dropped because the word table or arena was full.
+    public synchronized long droppedWords() {
+        return droppedWords;
+    }
+
+    // New n-grams dropped because their table was full.
+    public synchronized long droppedNgrams() {
+        return droppedNgrams;
+    }
+
+    // Bytes held outside the heap.
+    public synchronized long offHeapBytes() {
+        ensureOpen();
+        return region.capacity();
+    }
+
+    private void ensureOpen() {
+        if (region == null) throw new IllegalStateException("OffHeapSmartWord is closed");
+    }
+
+    // Flushes a mapped model to disk and detaches all buffers; later calls throw IllegalStateException.
+    public synchronized void close() {
+        if (region == null) return;
+        if (region instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) region).force();
+        }
+        region = null;
+        header = null;
+        nodes = null;
+        offsets = null;
+        freqs = null;
+        index = null;
+        arena = null;
+        bigrams = null;
+        trigrams = null;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+
+  Usage: ParallelEvalSmartWord manifestFile [threads]
+
+  Description:
+
+  Evaluates SmartWord on every corpus listed in manifestFile, one line per
+  corpus of the form
+
+     wordFile oldMessageFile newMessageFile
+
+  (blank lines and lines starting with # are ignored). Paths are relative to
+  the working directory. Every listed file is checked before anything runs,
+  since SmartWord only warns about a missing word file and would otherwise
+  be evaluated with an empty dictionary. Each corpus gets its own SmartWord
+  instance and runs on a pool of worker threads, one per core by default. Times are CPU time of the worker thread, so runs sharing the
+  machine do not inflate each other's numbers. The heap is shared by all
+  runs, so memory is reported as each model's estimated footprint after
+  preprocessing instead of the JVM's peak heap usage.
+ */
+public class ParallelEvalSmartWord {
+
+    // One corpus from the manifest and, once run, its measurements.
+    private static class Run {
+        final String wordFile;
+        final String oldMessageFile;
+        final String newMessageFile;
+
+        double preProcTime;
+        long memory;
+        SmartWordEval.Result result;
+
+        Run(String wordFile, String oldMessageFile, String newMessageFile) {
+            this.wordFile = wordFile;
+            this.oldMessageFile = oldMessageFile;
+            this.newMessageFile = newMessageFile;
+        }
+    }
+
+    private static final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1 && args.length != 2) {
+            System.err.println("Usage: ParallelEvalSmartWord manifestFile [threads]");
+            System.exit(-1);
+        }
+        if (!bean.isCurrentThreadCpuTimeSupported()) {
+            System.err.println("cpu time not supported");
+            System.exit(-1);
+        }
+
+        List<Run> runs;
+        try {
+            runs = readManifest(args[0]);
+        } catch (IOException e) {
+            System.err.println("Error reading manifest: " + e.getMessage());
+            System.exit(-1);
+            return;
+        }
+        int threads = args.length == 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs.size())));
+
+        List<Future<Run>> futures = new ArrayList<>();
+        for (Run run : runs) {
+            futures.add(pool.submit(() -> evaluate(run)));
+        }
+        pool.shutdown();
+
+        System.out.printf("%-20s %-20s %10s %10s %12s %12s %12s%n",
+            "oldMessageFile", "newMessageFile", "preproc s", "accuracy", "time/guess", "memory", "score");
+
+        double totalAccuracy = 0.0;
+        double totalTime = 0.0;
+        long totalGuesses = 0;
+        long totalMemory = 0;
+        int completed = 0;
+
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                System.err.println("Error evaluating " + run.newMessageFile + ": " + e.getCause());
+                continue;
+            }
+
+            SmartWordEval.Result r = run.result;
+            System.out.printf("%-20s %-20s %10.4f %10.4f %12.4E %12d %12.4f%n",
+                run.oldMessageFile, run.newMessageFile, run.preProcTime, r.accuracy, r.avgTime, run.memory, r.score(run.memory));
+
+            totalAccuracy += r.accuracy;
+            totalTime += r.avgTime * r.guesses;
+            totalGuesses += r.guesses;
+            totalMemory += run.memory;
+            completed++;
+        }
+
+        if (completed > 0) {
+            System.out.printf("%-52s %10.4f %12.4E %12d%n", "mean of " + completed + " corpora",
+                totalAccuracy / completed, totalGuesses == 0 ? 0.0 : totalTime / totalGuesses, totalMemory / completed);
+        }
+    }
+
+    // Trains and evaluates a fresh model for one corpus on the calling worker thread.
+    private static Run evaluate(Run run) throws IOException {
+        long start = bean.getCurrentThreadCpuTime();
+        SmartWord sw = new SmartWord(run.wordFile);
+        sw.processOldMessages(run.oldMessageFile);
+        run.preProcTime = (bean.getCurrentThreadCpuTime() - start) / 1E9;
+
+        run.memory = sw.footprint().totalBytes();
+        run.result = SmartWordEval.evaluate(sw, run.newMessageFile);
+        return run;
+    }
+
+    // Reads "wordFile oldMessageFile newMessageFile" triples, skipping blanks and comments; fails if a listed file
+    // cannot be read.
+    private static List<Run> readManifest(String manifestFile) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(manifestFile))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3) {
+                    System.err.println("Skipping manifest line: " + line);
+                    continue;
+                }
+                for (String file : fields) {
+                    if (!Files.isReadable(Paths.get(file))) {
+                        throw new IOException(manifestFile + ": cannot read " + file + " listed in: " + line);
+                    }
+                }
+                runs.add(new Run(fields[0], fields[1], fields[2]));
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/*
+
+  Minimal perfect hash over a fixed set of words, built with the
+  hash-and-displace (CHD) method.
+
+  Keys are split into buckets of about four by one hash. Buckets are then
+  placed largest first: for each bucket a seed is searched for that sends
+  every key in it to a distinct free slot of a table with exactly one slot
+  per key. Only the seeds are stored, one int per bucket, so the function
+  costs about 8 bits per key. apply() of a word in the set returns its slot
+  in [0, size); for any other word it returns some slot, so callers must
+  check the word stored there.
+ */
+class PerfectHash {
+
+    private static final int BUCKET_SIZE = 4;
+
+    private final int[] seeds;
+    private final int size;
+
+    private PerfectHash(int[] seeds, int size) {
+        this.seeds = seeds;
+        this.size = size;
+    }
+
+    // Builds the function for keys given by their 64-bit hashes; returns null if two keys cannot be separated.
+    static PerfectHash build(long[] keys) {
+        int n = keys.length;
+        if (n == 0) return null;
+        int buckets = (n + BUCKET_SIZE - 1) / BUCKET_SIZE;
+
+        // Group key indexes by bucket, counting-sort style.
+        int[] start = new int[buckets + 1];
+        for (long key : keys) start[bucket(key, buckets) + 1]++;
+        for (int b = 0; b < buckets; b++) start[b + 1] += start[b];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < n; i++) members[fill[bucket(keys[i], buckets)]++] = i;
+
+        // Place the largest buckets first, while the table is still mostly empty.
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b++) order[b] = b;
+        Arrays.sort(order, (a, b) -> (start[b + 1] - start[b]) - (start[a + 1] - start[a]));
+
+        int[] seeds = new int[buckets];
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[BUCKET_SIZE * 8];
+        long budget = 64L * n + 1_000_000;
+
+        for (int b : order) {
+            int count = start[b + 1] - start[b];
+            if (count == 0) break;
+            if (slots.length < count) slots = new int[count];
+
+            for (int seed = 0; ; seed++) {
+                if (--budget < 0) return null;
+                if (tryPlace(keys, members, start[b], count, seed, n, taken, slots)) {
+                    seeds[b] = seed;
+                    break;
+                }
+            }
+        }
+        return new PerfectHash(seeds, n);
+    }
+
+    // Claims slots for every key of a bucket under seed, or leaves the table unchanged and returns false.
+    private static boolean tryPlace(long[] keys, int[] members, int from, int count, int seed, int n,
+                                    boolean[] taken, int[] slots) {
+        for (int i = 0; i < count; i++) {
+            int slot = slot(keys[members[from + i]], seed, n);
+            if (taken[slot]) return false;
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) return false;
+            }
+            slots[i] = slot;
+        }
+        for (int i = 0; i < count; i++) taken[slots[i]] = true;
+        return true;
+    }
+
+    // Slot of a word in [0, size).
+    int apply(CharSequence word) {
+        return apply(hash(word));
+    }
+
+    // Slot of a key already hashed with hash().
+    int apply(long key) {
+        return slot(key, seeds[bucket(key, seeds.length)], size);
+    }
+
+    // Bytes of storage.
+    long bytes() {
+        return 4L * seeds.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Bits of storage per key.
+    double bitsPerKey() {
+        return bytes() * 8.0 / size;
+    }
+
+    // 64-bit FNV-1a hash of a word.
+    static long hash(CharSequence word) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    static long hash(char[] chars, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h = (h ^ chars[i]) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static int bucket(long key, int buckets) {
+        return range(mix(key), buckets);
+    }
+
+    private static int slot(long key, int seed, int n) {
+        return range(mix(key + (seed + 1) * 0x9E3779B97F4A7C15L), n);
+    }
+
+    // Maps a 64-bit hash onto [0, n) by multiplying its high half, avoiding a division.
+    private static int range(long hash, int n) {
+        return (int) (((hash >>> 32) * n) >>> 32);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
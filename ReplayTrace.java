@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/*
+
+  Usage: ReplayTrace wordFile oldMessageFile traceFile resultFile [-offheap] [-summary]
+
+  Description:
+
+  Replays a keystroke trace recorded by KeystrokeTrace into a SmartWord
+  trained on wordFile and oldMessageFile (or, with -offheap, into its
+  OffHeapSmartWord copy), and writes what happened to resultFile:
+
+     one line per guess:  wordPosition letterPosition letter guess1 guess2 guess3 +|-
+     then:                accuracy, guesses and words
+     last:                lines starting with "time", the only ones that vary between runs
+
+  Two result files for the same trace can be diffed to find the first
+  keystroke where two versions of the code guess differently, ignoring
+  timing with e.g. diff <(grep -v ^time a) <(grep -v ^time b). -summary
+  leaves out the per-guess lines. Accuracy and time are measured as in
+  EvalSmartWord, so they match an EvalSmartWord run on the recorded file.
+ */
+public class ReplayTrace {
+
+    public static void main(String[] args) throws IOException {
+        boolean offHeap = false;
+        boolean summary = false;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].equals("-offheap")) {
+                offHeap = true;
+            } else if (args[i].equals("-summary")) {
+                summary = true;
+            } else {
+                args = new String[0];
+            }
+        }
+        if (args.length < 4) {
+            System.err.println("Usage: ReplayTrace wordFile oldMessageFile traceFile resultFile [-offheap] [-summary]");
+            System.exit(-1);
+        }
+
+        SmartWord sw = new SmartWord(args[0]);
+        sw.processOldMessages(args[1]);
+        WordPredictor predictor = offHeap ? OffHeapSmartWord.copyOf(sw) : sw;
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[3])))) {
+            out.println("# trace " + args[2] + " predictor " + predictor.getClass().getName());
+            SmartWordEval.Result result = KeystrokeTrace.replay(predictor, args[2], summary ? null : out);
+
+            out.printf("accuracy %.4f%n", result.accuracy);
+            out.println("guesses " + result.guesses);
+            out.println("words " + result.words);
+            out.printf("time per guess in seconds %.4e%n", result.avgTime);
+            System.out.printf("Accuracy: %.4f%n", result.accuracy);
+            System.out.printf("Average time per guess in seconds: %.4e%n", result.avgTime);
+        }
+    }
+}
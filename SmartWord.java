@@ -22,22 +22,45 @@
 
 import java.util.*;
 import java.io.*;
-import java.util.stream.Collectors;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
 
 // A class representing a smart word suggestion system using a Trie and n-gram frequency maps.
-public class SmartWord {
+public class SmartWord implements WordPredictor {
 
     // Trie data structure for storing and querying words efficiently.
-    private final Trie trie;
+    // Replaced with a repacked copy when the model is compacted.
+    private Trie trie;
 
-    // Map to store the frequency of individual words.
-    private final Map<String, Integer> wordFrequencyMap = new HashMap<>();
+    // Text and frequency of every known word, addressed by word id; replaces a String-keyed frequency map.
+    private WordArena words = new WordArena();
 
-    // Map to store bigram (pair of words) frequencies.
-    private final Map<String, Map<String, Integer>> bigramFrequencyMap = new HashMap<>();
+    // Map to store bigram (pair of words) frequencies, keyed by word id.
+    private Map<Integer, Map<Integer, Integer>> bigramFrequencyMap = new HashMap<>();
 
-    // Map to store trigram (three consecutive words) frequencies.
-    private final Map<String, Map<String, Map<String, Integer>>> trigramFrequencyMap = new HashMap<>();
+    // Map to store trigram (three consecutive words) frequencies, keyed by word id.
+    private Map<Integer, Map<Integer, Map<Integer, Integer>>> trigramFrequencyMap = new HashMap<>();
+
+    // Frequency tables this instance may modify in place. Null until the model is forked; after that any
+    // table not in the set (and the word arena, unless ownsWords) is shared with a fork and is copied before its first write.
+    private Set<Map<?, ?>> ownedTables = null;
+    private boolean ownsWords = true;
+
+    // Scoring parameters: feedback adjustments, suggestions kept per trie node, and entries kept per n-gram table.
+    private int correctBonus = 50;
+    private int wrongPenalty = 2;
+    private int suggestionCap = 10;
+    private int ngramCap = 50;
+
+    // Latency budget per guess() in nanoseconds, or 0 for none.
+    private long guessBudgetNanos = 0;
+
+    // Most n-gram lookups one guessPhrases() call may make while extending its beam.
+    private int phraseExpansionCap = 32;
 
     // StringBuilder to hold the current word prefix being processed.
     private final StringBuilder currentWordPrefix = new StringBuilder();
@@ -48,149 +71,653 @@ public class SmartWord {
     // Array to hold up to three word suggestions.
     private final String[] guesses = new String[3];
 
-    // Variables to track the last and second-to-last words processed.
-    private String lastWord = null;
-    private String secondLastWord = null;
+    // Word ids of the ranked suggestions for the current node, reused between calls.
+    private int[] ranked = new int[16];
+
+    // Ids of the last and second-to-last words processed, or -1.
+    private int lastWord = -1;
+    private int secondLastWord = -1;
+
+    // Byte offset and trailing context words for each message file this model has read, by either
+    // processOldMessages or processNewMessages.
+    private final Map<String, TailState> tailStates = new HashMap<>();
+
+    // Background poller that feeds appended message text into the model.
+    private ScheduledExecutorService tailExecutor = null;
+
+    // Speculative guessing, off unless startSpeculating() is called: after each keystroke a background thread ranks
+    // the suggestions of the likeliest next nodes so that the next guess() can return them without ranking.
+    private ExecutorService speculationExecutor = null;
+    private int speculationWidth = 0;
+
+    // Bumped by every change to frequencies, n-grams or parameters; speculation from an older version is stale.
+    private long modelVersion = 0;
+
+    // Keystroke the pending speculation belongs to and the node it starts from; per next letter, the guesses ranked
+    // for that child (null if not computed), its candidate count and the thread CPU time the ranking took.
+    private long speculationRound = 0;
+    private TrieNode speculativeParent = null;
+    private long speculativeVersion = -1;
+    private final String[][] speculativeGuesses = new String[26][];
+    private final int[] speculativeCounts = new int[26];
+    private final long[] speculativeCpu = new long[26];
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // Counters and JFR events describing the hot path; exposed over JMX by SmartWordMetrics.
+    final SmartWordMetrics metrics = new SmartWordMetrics(this);
+
+    // Trie nodes stepped through by the current guess() call, reported to JFR.
+    private int nodesVisited = 0;
 
     // Constructor that initializes the Trie and loads vocabulary from a given file.
     public SmartWord(final String wordFile) {
-        trie = new Trie();
-        loadVocabulary(wordFile);
+        this(wordFile, false);
+    }
+
+    // Like SmartWord(wordFile), optionally putting the dictionary behind a minimal perfect hash (WordArena.freeze()).
+    // That saves index memory but, as BenchVocabularyIndex shows, makes lookups slower, so it is off by default.
+    public SmartWord(final String wordFile, final boolean perfectHash) {
+        loadVocabulary(wordFile, perfectHash);
+    }
+
+    // Constructor for fork(): shares the trained tables of base, which the caller has already marked shared.
+    private SmartWord(final SmartWord base) {
+        trie = base.trie.share();
+        words = base.words;
+        ownsWords = false;
+        bigramFrequencyMap = base.bigramFrequencyMap;
+        trigramFrequencyMap = base.trigramFrequencyMap;
+        ownedTables = Collections.newSetFromMap(new IdentityHashMap<>());
+        correctBonus = base.correctBonus;
+        wrongPenalty = base.wrongPenalty;
+        suggestionCap = base.suggestionCap;
+        ngramCap = base.ngramCap;
+        phraseExpansionCap = base.phraseExpansionCap;
+        guessBudgetNanos = base.guessBudgetNanos;
+        lastWord = base.lastWord;
+        secondLastWord = base.secondLastWord;
+    }
+
+    // Returns an independent copy of this model in O(1); trie nodes and tables are shared until either side writes them.
+    public synchronized SmartWord fork() {
+        trie = trie.share();
+        ownedTables = Collections.newSetFromMap(new IdentityHashMap<>());
+        ownsWords = false;
+        return new SmartWord(this);
+    }
+
+    // Sets the scoring parameters. Lowering ngramCap trims the existing n-gram tables; raising it only affects new counts.
+    // Likewise, raising suggestionCap does not rebuild the trie's suggestion lists, it only lets later updates grow them.
+    public synchronized void setParameters(final int correctBonus, final int wrongPenalty, final int suggestionCap, final int ngramCap) {
+        modelVersion++;
+        this.correctBonus = correctBonus;
+        this.wrongPenalty = wrongPenalty;
+        this.suggestionCap = suggestionCap;
+
+        if (ngramCap < this.ngramCap) {
+            this.ngramCap = ngramCap;
+
+            // Only tables over the new cap are copied (if shared) and trimmed.
+            for (Map.Entry<Integer, Map<Integer, Integer>> bigrams : new ArrayList<>(bigramFrequencyMap.entrySet())) {
+                if (bigrams.getValue().size() > ngramCap) {
+                    bigramFrequencyMap = own(bigramFrequencyMap);
+                    limitFrequencyMap(ownChild(bigramFrequencyMap, bigrams.getKey()), -1);
+                }
+            }
+            for (Map.Entry<Integer, Map<Integer, Map<Integer, Integer>>> outer : new ArrayList<>(trigramFrequencyMap.entrySet())) {
+                for (Map.Entry<Integer, Map<Integer, Integer>> trigrams : new ArrayList<>(outer.getValue().entrySet())) {
+                    if (trigrams.getValue().size() > ngramCap) {
+                        trigramFrequencyMap = own(trigramFrequencyMap);
+                        Map<Integer, Map<Integer, Integer>> middle = ownChild(trigramFrequencyMap, outer.getKey());
+                        limitFrequencyMap(ownChild(middle, trigrams.getKey()), -1);
+                    }
+                }
+            }
+        }
+        this.ngramCap = ngramCap;
     }
 
     // Method to load vocabulary from a specified file.
-    private void loadVocabulary(String wordFile) {
+    private void loadVocabulary(String wordFile, boolean perfectHash) {
+        List<String> dictionary = new ArrayList<>();
         try (BufferedReader br = new BufferedReader(new FileReader(wordFile))) {
             String word;
 
             // Read words line by line from the file.
             while ((word = br.readLine()) != null) {
                 word = word.toLowerCase().trim();
-
-                // If the word is not empty, add it to the frequency map and Trie.
                 if (!word.isEmpty()) {
-                    wordFrequencyMap.put(word, 1);
-                    trie.insert(word, 1);
+                    dictionary.add(word);
                 }
             }
         } catch (IOException e) {
             // Handle exceptions during file reading.
             System.err.println("Error reading word file: " + e.getMessage());
         }
+
+        // Add the words to the arena; nothing refers to word ids yet, so the dictionary can be renumbered by its perfect hash.
+        for (String word : dictionary) {
+            words.setFrequency(words.intern(word), 1);
+        }
+        if (perfectHash) words.freeze();
+
+        // Build the trie in one pass over the sorted words, filling the suggestion lists as it goes.
+        // Word files are usually sorted already, which the sort handles in linear time.
+        Collections.sort(dictionary);
+        trie = Trie.buildSorted(dictionary, words, suggestionCap);
     }
 
     // Method to process a file of old messages to update bigram and trigram frequencies.
-    public void processOldMessages(final String oldMessageFile) {
-        try (BufferedReader br = new BufferedReader(new FileReader(oldMessageFile))) {
-            String previousWord = null; 
-            String prePreviousWord = null; 
-            StringBuilder wordBuilder = new StringBuilder();
-            char[] buffer = new char[1024];
-            int read;
-
-            // Read the file in chunks.
-            while ((read = br.read(buffer)) != -1) {
-                for (int i = 0; i < read; i++) {
-                    char c = Character.toLowerCase(buffer[i]);
-
-                    // If the character is a letter, append it to the current word being constructed.
-                    if (Character.isLetter(c)) {
-                        wordBuilder.append(c);
-                    } else {
-                        // When a non-letter character is encountered, finalize the current word.
-                        if (wordBuilder.length() > 0) {
-                            String word = wordBuilder.toString();
-                            wordBuilder.setLength(0);
-                         
-                            // Update frequency maps for the current word and its context.
-                            updateFrequencies(word, previousWord, prePreviousWord);
-
-                            // Update the word context.
-                            prePreviousWord = previousWord;
-                            previousWord = word;
-                        }
-                    }
-                }
-            }
+    // The file is decoded exactly as processNewMessages decodes followed files, and where it was read up to is
+    // recorded, so following it afterwards picks up right after the last word read here. If the file already has a
+    // checkpoint (it was followed by an earlier run), the checkpoint is moved there as well: this is how a restarted
+    // model is rebuilt before it follows the file again.
+    public synchronized void processOldMessages(final String oldMessageFile) {
+        SmartWordMetrics.ProcessOldMessagesEvent event = new SmartWordMetrics.ProcessOldMessagesEvent();
+        event.begin();
+        long wordsProcessed = 0;
+
+        TailState state = new TailState(Paths.get(oldMessageFile + ".ckpt"));
+        try (FileChannel channel = FileChannel.open(Paths.get(oldMessageFile), StandardOpenOption.READ)) {
+            wordsProcessed = ingest(channel, state, false);
+            tailStates.put(oldMessageFile, state);
+            if (Files.exists(state.checkpoint)) state.save();
         } catch (IOException e) {
             // Handle exceptions during file reading.
             System.err.println("Error processing old messages: " + e.getMessage());
         }
 
- // Updates the frequency maps for the given word and its context (previous and pre-previous words).
-private void updateFrequencies(String word, String previousWord, String prePreviousWord) {
-    // Update the frequency of the word in the word frequency map.
-    wordFrequencyMap.merge(word, 1, Integer::sum);
+        if (event.shouldCommit()) {
+            event.file = oldMessageFile;
+            event.wordsProcessed = wordsProcessed;
+            event.commit();
+        }
+    }
+
+    // Bytes of a message file ingested per hold of the model lock.
+    private static final int TAIL_CHUNK = 64 * 1024;
+
+    // Processes only the text appended to a message file since the last call, resuming from its checkpoint.
+    // The model lock is taken for one chunk at a time and the checkpoint saved after each, so a long catch-up
+    // does not hold up guesses.
+    public void processNewMessages(final String messageFile) {
+        TailState state;
+        synchronized (this) {
+            state = tailState(messageFile);
+        }
+
+        synchronized (state) {
+            try (FileChannel channel = FileChannel.open(Paths.get(messageFile), StandardOpenOption.READ)) {
+                // Start over if the file was truncated or replaced since the last checkpoint.
+                if (channel.size() < state.offset) {
+                    state.reset();
+                }
+                ingest(channel, state, true);
+            } catch (IOException e) {
+                // Handle exceptions during file reading.
+                System.err.println("Error processing new messages: " + e.getMessage());
+            }
+        }
+    }
+
+    // The ingestion state of a message file. The model itself is not saved, so a checkpoint left by an earlier run
+    // only describes text this model does not hold yet; resuming from it would silently lose everything before it.
+    // Such a file must be read with processOldMessages first, which rebuilds the model and moves the checkpoint to
+    // where it stopped reading.
+    private TailState tailState(final String messageFile) {
+        TailState state = tailStates.get(messageFile);
+        if (state == null) {
+            state = TailState.load(messageFile);
+            if (state.offset > 0) {
+                throw new IllegalStateException(messageFile + " was ingested up to byte " + state.offset
+                    + " by an earlier run; call processOldMessages on it first to rebuild the model");
+            }
+            tailStates.put(messageFile, state);
+        }
+        return state;
+    }
+
+    // Feeds the bytes of a message file from state.offset on into the model, a chunk per hold of the model lock;
+    // each chunk starts after the last completed word of the one before. Saves the checkpoint after each chunk if
+    // save is set. Returns the number of words ingested.
+    private long ingest(final FileChannel channel, final TailState state, final boolean save) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAIL_CHUNK);
+        long ingested = 0;
+        int read;
+
+        while ((read = channel.read(buffer, state.offset)) > 0) {
+            long before = state.offset;
+            synchronized (this) {
+                ingested += ingestChunk(state, buffer, read);
+            }
+            buffer.clear();
+
+            if (state.offset == before) {
+                // A full chunk without a word break cannot be a word; skip it. Otherwise wait for more text.
+                if (read < TAIL_CHUNK) break;
+                state.offset += read;
+            }
+            if (save) state.save();
+        }
+        return ingested;
+    }
+
+    // Feeds the completed words of one chunk into the model and returns how many there were. The bytes are decoded
+    // as UTF-8, and state.offset is advanced past each word break, so a word or character cut off at the end of the
+    // chunk is read again with the next one. Words with letters outside a to z are skipped; the trie cannot hold them.
+    private int ingestChunk(final TailState state, final ByteBuffer buffer, final int length) {
+        StringBuilder wordBuilder = new StringBuilder();
+        int ingested = 0;
+        // The context as ids while the chunk is read; it only goes back to the state as words at the end.
+        int previousWord = idOf(state.previousWord);
+        int prePreviousWord = idOf(state.prePreviousWord);
+        long start = state.offset;
+        int i = 0;
+
+        while (i < length) {
+            int b = buffer.get(i) & 0xff;
+            int size = b < 0xc0 ? 1 : b < 0xe0 ? 2 : b < 0xf0 ? 3 : 4;
+            if (i + size > length) break;
+
+            // Decode one character; malformed sequences become U+FFFD, which ends a word.
+            int codePoint = b < 0x80 ? b : size == 1 ? 0xfffd : b & (0x7f >> size);
+            for (int k = 1; k < size; k++) {
+                int next = buffer.get(i + k) & 0xff;
+                if ((next & 0xc0) != 0x80) {
+                    codePoint = 0xfffd;
+                    size = k;
+                    break;
+                }
+                codePoint = codePoint << 6 | (next & 0x3f);
+            }
+            i += size;
+
+            // If the character is a letter, append it to the current word being constructed.
+            codePoint = Character.toLowerCase(codePoint);
+            if (Character.isLetter(codePoint)) {
+                wordBuilder.appendCodePoint(codePoint);
+                continue;
+            }
+
+            // When a non-letter character is encountered, finalize the current word.
+            if (wordBuilder.length() > 0) {
+                if (isTrieWord(wordBuilder)) {
+                    int word = updateFrequencies(wordBuilder, previousWord, prePreviousWord);
+                    prePreviousWord = previousWord;
+                    previousWord = word;
+                    ingested++;
+                }
+                wordBuilder.setLength(0);
+            }
+
+            // Only advance past completed words so a partially written word is re-read next time.
+            state.offset = start + i;
+        }
+
+        state.previousWord = previousWord < 0 ? null : words.word(previousWord);
+        state.prePreviousWord = prePreviousWord < 0 ? null : words.word(prePreviousWord);
+        return ingested;
+    }
+
+    // True if the word is made of the letters a to z only, the ones the trie has children for.
+    private static boolean isTrieWord(final CharSequence word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') return false;
+        }
+        return true;
+    }
+
+    // Starts polling a message file for appends, feeding new text into the model while guesses are served.
+    // Throws IllegalStateException right away if the file must be read with processOldMessages first.
+    public synchronized void followMessages(final String messageFile, final long pollMillis) {
+        tailState(messageFile);
+        if (tailExecutor == null) {
+            tailExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "SmartWord-tail");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        // An exception would cancel the schedule, so report it and keep following.
+        tailExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                processNewMessages(messageFile);
+            } catch (RuntimeException e) {
+                System.err.println("Error following " + messageFile + ": " + e);
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops following all message files; checkpoints are already saved after each pass.
+    public synchronized void stopFollowing() {
+        if (tailExecutor != null) {
+            tailExecutor.shutdownNow();
+            tailExecutor = null;
+        }
+    }
+
+ // Updates the frequency maps for the given word and its context (ids of the previous and pre-previous words, or -1).
+ // Returns the word's id.
+private int updateFrequencies(CharSequence text, int previousWord, int prePreviousWord) {
+    modelVersion++;
+
+    // Update the frequency of the word in the word arena.
+    ownWords();
+    int word = words.intern(text);
+    words.setFrequency(word, words.frequency(word) + 1);
 
     // Insert the word into the Trie with its updated frequency.
-    trie.insert(word, wordFrequencyMap.get(word));
+    trie.insert(text, words.frequency(word));
 
     // Update the bigram frequency map if there is a previous word.
-    if (previousWord != null) {
+    if (previousWord >= 0) {
         // Get or create a map of frequencies for the previous word and merge the current word's count.
-        bigramFrequencyMap.computeIfAbsent(previousWord, k -> new HashMap<>())
-            .merge(word, 1, Integer::sum);
+        bigramFrequencyMap = own(bigramFrequencyMap);
+        Map<Integer, Integer> bigrams = ownChild(bigramFrequencyMap, previousWord);
+        bigrams.merge(word, 1, Integer::sum);
 
         // Limit the size of the bigram map to prevent memory overuse.
-        limitFrequencyMap(bigramFrequencyMap.get(previousWord));
+        limitFrequencyMap(bigrams, word);
     }
 
     // Update the trigram frequency map if there are two previous words.
-    if (prePreviousWord != null) {
+    if (prePreviousWord >= 0) {
         // Get or create a nested map for the trigram structure and update the frequency.
-        trigramFrequencyMap
-            .computeIfAbsent(prePreviousWord, k -> new HashMap<>())
-            .computeIfAbsent(previousWord, k -> new HashMap<>())
-            .merge(word, 1, Integer::sum);
+        trigramFrequencyMap = own(trigramFrequencyMap);
+        Map<Integer, Integer> trigrams = ownChild(ownChild(trigramFrequencyMap, prePreviousWord), previousWord);
+        trigrams.merge(word, 1, Integer::sum);
 
         // Limit the size of the trigram map for memory efficiency.
-        limitFrequencyMap(trigramFrequencyMap.get(prePreviousWord).get(previousWord));
+        limitFrequencyMap(trigrams, word);
     }
+    return word;
 }
 
-// Provides contextual word suggestions based on the previous words.
-private List<String> getContextualSuggestions(List<String> suggestions, String[] previousWords) {
-    // Determine the n-gram length (up to 4-gram) for context scoring.
-    int nGramLength = Math.min(previousWords.length, 4);
-    Map<String, Integer> contextualMap = new HashMap<>();
+// Id of a known word, or -1 for null or an unknown word.
+private int idOf(String word) {
+    return word == null ? -1 : words.find(word);
+}
 
-    // Calculate a context-based score for each suggestion.
-    for (String suggestion : suggestions) {
-        int score = calculateContextScore(suggestion, previousWords, nGramLength);
-        contextualMap.put(suggestion, score); 
+// Takes a private copy of the word arena if it is shared with a fork.
+private void ownWords() {
+    if (!ownsWords) {
+        words = words.copy();
+        ownsWords = true;
     }
-
-    // Sort suggestions by their context scores in descending order and return the sorted list.
-    return contextualMap.entrySet().stream()
-        .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
-        .map(Map.Entry::getKey)
-        .collect(Collectors.toList());
 }
 
-// Calculates a score for a suggestion based on its presence in the bigram frequency map.
-private int calculateContextScore(String suggestion, String[] previousWords, int nGramLength) {
-    int score = 0;
+// Returns table itself if this instance owns it, otherwise a private copy to write to instead.
+private <K, V> Map<K, V> own(Map<K, V> table) {
+    if (ownedTables == null || ownedTables.contains(table)) return table;
 
-    // Add scores from bigram frequency maps for up to n-gram context length.
-    for (int i = 0; i < nGramLength; i++) {
-        score += bigramFrequencyMap
-            .getOrDefault(previousWords[i], new HashMap<>())
-            .getOrDefault(suggestion, 0);
+    Map<K, V> copy = new HashMap<>(table);
+    ownedTables.add(copy);
+    return copy;
+}
+
+// Returns the writable table stored under key in parent (which must already be owned), creating or copying it.
+private <K, V> Map<K, V> ownChild(Map<Integer, Map<K, V>> parent, Integer key) {
+    Map<K, V> child = parent.get(key);
+    if (child == null) {
+        child = new HashMap<>();
+    } else if (ownedTables == null || ownedTables.contains(child)) {
+        return child;
+    } else {
+        child = new HashMap<>(child);
     }
+    parent.put(key, child);
+    if (ownedTables != null) ownedTables.add(child);
+    return child;
+}
 
-    return score; // Return the aggregated score for the suggestion.
+// Creates an empty table this instance owns.
+private <K, V> Map<K, V> newTable() {
+    Map<K, V> table = new HashMap<>();
+    if (ownedTables != null) ownedTables.add(table);
+    return table;
 }
 
-// Limits the size of a frequency map to a maximum of 50 entries by removing low-frequency entries.
-private void limitFrequencyMap(Map<String, Integer> map) {
-    if (map.size() > 50) {
-        // Remove entries with the lowest frequency to reduce the map size.
-        map.entrySet().removeIf(entry -> entry.getValue() < Collections.min(map.values()));
+// Limits the size of a frequency map to a maximum of ngramCap entries by removing the lowest-frequency entries.
+// keep is the word just counted (or -1); among equal counts it is removed last, so new words can enter a full table.
+// Other ties go in word id order.
+private void limitFrequencyMap(Map<Integer, Integer> map, int keep) {
+    int size = map.size();
+    int excess = size - ngramCap;
+    if (excess <= 0) return;
+
+    // Order the entries by count, then word id, with keep after the others of its count, and drop the first excess.
+    // The order depends only on the entries, so a copied table (as a fork makes) is trimmed the same way.
+    long[] order = new long[size];
+    int n = 0;
+    for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+        int word = entry.getKey();
+        order[n++] = (long) entry.getValue() << 32 | (word == keep ? Integer.MAX_VALUE : word);
+    }
+    Arrays.sort(order);
+    for (int i = 0; i < excess; i++) {
+        int word = (int) order[i];
+        map.remove(word == Integer.MAX_VALUE ? keep : word);
+    }
+
+    // Only prunes that actually removed entries are counted.
+    int removed = size - map.size();
+    if (removed > 0) {
+        metrics.pruneCount++;
+        metrics.prunedEntries += removed;
     }
 }
 
 // Generates guesses for the current word being typed based on the Trie and context.
 public String[] guess(final char letter, final int letterPosition, final int wordPosition) {
+    long requested = System.nanoTime();
+    synchronized (this) {
+        return guess(letter, letterPosition, wordPosition, guessBudgetNanos, requested);
+    }
+}
+
+// Sets the latency budget that guess() without an explicit budget runs under; 0 removes it.
+public synchronized void setGuessBudget(final long budgetNanos) {
+    this.guessBudgetNanos = budgetNanos;
+}
+
+// Generates guesses within budgetNanos (no limit if 0 or less). The frequency-only top 3 is produced first; the
+// context ranking only runs if time remains, so the answer is always the best finished by the deadline.
+// Keystrokes that skip the context ranking or finish late are counted as budget overruns.
+public String[] guess(final char letter, final int letterPosition, final int wordPosition, final long budgetNanos) {
+    long requested = System.nanoTime();
+    synchronized (this) {
+        return guess(letter, letterPosition, wordPosition, budgetNanos, requested);
+    }
+}
+
+// Answers a keystroke that arrived at time requested. The budget and latencies count from then rather than from
+// when the lock was acquired, so time spent waiting behind a speculation task is charged to the keystroke.
+private String[] guess(final char letter, final int letterPosition, final int wordPosition, final long budgetNanos,
+                       final long requested) {
+    boolean speculating = speculationExecutor != null;
+    metrics.guessLockWaitNanos += System.nanoTime() - requested;
+    SmartWordMetrics.GuessEvent event = new SmartWordMetrics.GuessEvent();
+    event.begin();
+    nodesVisited = 0;
+
+    boolean overBudget = false;
+    int speculation = speculating ? takeSpeculation(letter, letterPosition) : NOT_SPECULATED;
+    int candidatesScored;
+    if (speculation >= 0) {
+        // Answered from the speculation, well within any budget.
+        if (budgetNanos > 0) metrics.budgetedGuessCount++;
+        candidatesScored = speculation;
+    } else if (budgetNanos > 0) {
+        metrics.budgetedGuessCount++;
+        candidatesScored = fillGuessesWithin(letter, letterPosition, requested + budgetNanos);
+        overBudget = candidatesScored < 0 || System.nanoTime() - requested > budgetNanos;
+        if (overBudget) metrics.budgetOverruns++;
+        candidatesScored = Math.abs(candidatesScored);
+    } else {
+        candidatesScored = fillGuesses(letter, letterPosition);
+    }
+
+    if (speculating) {
+        long latency = System.nanoTime() - requested;
+        if (speculation >= 0) {
+            metrics.speculationHitNanos += latency;
+        } else if (speculation == SPECULATION_MISS) {
+            metrics.speculationMissNanos += latency;
+        }
+        speculate(currentNode);
+    }
+
+    metrics.guessCount++;
+    if (currentNode != null) metrics.prefixHits++;
+    if (event.shouldCommit()) {
+        event.prefixLength = currentWordPrefix.length();
+        event.nodesVisited = nodesVisited;
+        event.candidatesScored = candidatesScored;
+        event.overBudget = overBudget;
+        event.commit();
+    }
+
+    return guesses; // Return the array of guesses.
+}
+
+// Starts speculative guessing: after each keystroke, the width children of the current node with the most frequent
+// subtrees have their guesses ranked on a background thread. The thread takes the model's lock, so the work fits in
+// the idle time between keystrokes; results are dropped once the next keystroke arrives or the model changes.
+public synchronized void startSpeculating(final int width) {
+    if (speculationExecutor == null) {
+        speculationExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "SmartWord-speculate");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    speculationWidth = Math.max(1, Math.min(26, width));
+}
+
+// Stops speculative guessing; pending results count as wasted.
+public synchronized void stopSpeculating() {
+    if (speculationExecutor != null) {
+        speculationExecutor.shutdownNow();
+        speculationExecutor = null;
+        discardSpeculation(-1);
+    }
+}
+
+// Outcomes of takeSpeculation() other than a hit, which returns the candidate count.
+private static final int SPECULATION_MISS = -1;
+private static final int NOT_SPECULATED = -2;
+
+// Settles the speculation for this keystroke. On a hit, moves the cursor and publishes the precomputed guesses,
+// returning the candidate count. Returns SPECULATION_MISS if guesses were speculated from this node but not for this
+// letter (or not finished yet), and NOT_SPECULATED if there was no valid speculation from this node.
+private int takeSpeculation(final char letter, final int letterPosition) {
+    TrieNode parent = letterPosition == 0 ? trie.root : currentNode;
+    boolean attempted = parent != null && parent == speculativeParent && speculativeVersion == modelVersion;
+    int slot = letter >= 'a' && letter <= 'z' ? letter - 'a' : -1;
+    String[] top = attempted && slot >= 0 ? speculativeGuesses[slot] : null;
+    int count = top != null ? speculativeCounts[slot] : 0;
+    discardSpeculation(top != null ? slot : -1);
+
+    if (!attempted) return NOT_SPECULATED;
+    if (top == null) {
+        metrics.speculationMisses++;
+        return SPECULATION_MISS;
+    }
+    metrics.speculationHits++;
+    advance(letter, letterPosition);
+    System.arraycopy(top, 0, guesses, 0, 3);
+    return count;
+}
+
+// Clears the speculative results, charging their CPU time as used for slot used and as wasted for the rest,
+// and makes any ranking still queued stale.
+private void discardSpeculation(final int used) {
+    for (int i = 0; i < 26; i++) {
+        if (speculativeGuesses[i] == null) continue;
+        if (i == used) {
+            metrics.speculationUsedCpuNanos += speculativeCpu[i];
+        } else {
+            metrics.speculationWastedCpuNanos += speculativeCpu[i];
+        }
+        speculativeGuesses[i] = null;
+    }
+    speculativeParent = null;
+    speculationRound++;
+}
+
+// Queues background ranking for the speculationWidth children of parent with the most frequent subtrees. A child's
+// subtree frequency is estimated by the total frequency of its suggestion list, which holds the subtree's top words.
+private void speculate(final TrieNode parent) {
+    if (parent == null) return;
+
+    int[] chosen = new int[speculationWidth];
+    long[] scores = new long[speculationWidth];
+    int size = 0;
+    for (int i = 0; i < 26; i++) {
+        TrieNode child = parent.children[i];
+        if (child == null || child.suggestionCount == 0) continue;
+        long score = 0;
+        for (int j = 0; j < child.suggestionCount; j++) score += words.frequency(child.bestSuggestions[j]);
+        if (size == chosen.length && score <= scores[size - 1]) continue;
+        int j = size < chosen.length ? size++ : size - 1;
+        while (j > 0 && scores[j - 1] < score) {
+            chosen[j] = chosen[j - 1];
+            scores[j] = scores[j - 1];
+            j--;
+        }
+        chosen[j] = i;
+        scores[j] = score;
+    }
+
+    speculativeParent = parent;
+    speculativeVersion = modelVersion;
+    long round = speculationRound;
+    for (int i = 0; i < size; i++) {
+        int letter = chosen[i];
+        speculationExecutor.execute(() -> speculateChild(round, letter, parent.children[letter]));
+    }
+}
+
+// Background task: ranks one child's suggestions unless the keystroke it was queued for has already passed.
+private synchronized void speculateChild(final long round, final int letter, final TrieNode child) {
+    if (round != speculationRound || speculativeVersion != modelVersion) return;
+    long cpu = THREADS.getCurrentThreadCpuTime();
+    int count = rankSuggestions(child);
+    String[] top = new String[3];
+    for (int i = 0; i < 3 && i < count; i++) {
+        top[i] = words.word(ranked[i]);
+    }
+    speculativeGuesses[letter] = top;
+    speculativeCounts[letter] = count;
+    speculativeCpu[letter] = THREADS.getCurrentThreadCpuTime() - cpu;
+}
+
+// Advances the trie cursor by one letter and fills the guesses array; returns the number of candidates scored.
+private int fillGuesses(final char letter, final int letterPosition) {
+    if (!advance(letter, letterPosition)) return 0;
+    return publishGuesses(rankSuggestions(currentNode));
+}
+
+// Like fillGuesses, but only ranks by context if deadline (a System.nanoTime() value) has not passed.
+// Returns the number of candidates scored, negated if the context ranking was skipped for lack of time.
+private int fillGuessesWithin(final char letter, final int letterPosition, final long deadline) {
+    if (!advance(letter, letterPosition)) return 0;
+
+    // Cheap answer first: the three most frequent suggestions, selected without sorting the whole list.
+    if (ranked.length < currentNode.suggestionCount) {
+        ranked = new int[currentNode.suggestionCount];
+    }
+    int count = publishGuesses(trie.getTopSuggestions(currentNode, Math.min(3, suggestionCap), words, ranked));
+
+    // Without context the full ranking has the same top 3, so there is nothing left to refine.
+    if (secondLastWord < 0 || lastWord < 0) return count;
+    if (System.nanoTime() - deadline >= 0) return -count;
+    return publishGuesses(rankSuggestions(currentNode));
+}
+
+// Moves the trie cursor to the node for the prefix plus letter. If there is none, clears the guesses and returns false.
+private boolean advance(final char letter, final int letterPosition) {
     // Reset the prefix and Trie traversal if it's the start of a new word.
     if (letterPosition == 0) {
         currentWordPrefix.setLength(0);
@@ -204,195 +731,1006 @@ public String[] guess(final char letter, final int letterPosition, final int wor
     if (letter < 'a' || letter > 'z' || currentNode == null) {
         Arrays.fill(guesses, null); 
         currentNode = null;
-        return guesses;
+        return false;
     }
 
     // Move to the child node corresponding to the current letter.
     int index = letter - 'a';
     currentNode = currentNode.children[index];
+    nodesVisited++;
 
     // If the current node is null, no further suggestions are possible.
     if (currentNode == null) {
         Arrays.fill(guesses, null);
-        return guesses;
+        return false;
+    }
+
+    return true;
+}
+
+// Copies the first three ranked suggestions into the guesses array, padding with null; returns count.
+private int publishGuesses(final int count) {
+    for (int i = 0; i < 3; i++) {
+        guesses[i] = i < count ? words.word(ranked[i]) : null;
+    }
+    return count;
+}
+
+// Ranks the suggestions stored at a trie node into ranked[] by frequency, then by n-gram context if available.
+// Returns how many there are.
+private int rankSuggestions(TrieNode node) {
+    if (ranked.length < node.suggestionCount) {
+        ranked = new int[node.suggestionCount];
     }
 
     // Get a list of suggestions from the Trie based on the current prefix.
-    List<String> suggestions = trie.getSuggestions(
-        currentNode,
-        currentWordPrefix.toString(),
-        10, 
-        wordFrequencyMap
-    );
+    int count = trie.getSuggestions(node, suggestionCap, words, ranked);
 
     // Refine suggestions using bigram and trigram context if available.
-    if (secondLastWord != null && lastWord != null) {
-        suggestions = refineSuggestionsWithContext(suggestions, lastWord, secondLastWord);
+    if (secondLastWord >= 0 && lastWord >= 0) {
+        refineSuggestionsWithContext(ranked, count, lastWord, secondLastWord);
     }
+    return count;
+}
 
-    // Populate the guesses array with the top 3 suggestions.
-    for (int i = 0; i < 3; i++) {
-        guesses[i] = i < suggestions.size() ? suggestions.get(i) : null;
+// Sets how many n-gram lookups a single guessPhrases() call may make.
+public synchronized void setPhraseExpansionCap(final int phraseExpansionCap) {
+    this.phraseExpansionCap = phraseExpansionCap;
+}
+
+// Phrase guesses for the prefix reached by the last guess() call: the top completions of the current word, each
+// followed by up to extraWords likely next words. A beam of three phrases over word ids is extended one word at a
+// time from the trigram table, backing off to the bigram table, until extraWords are added or phraseExpansionCap
+// lookups are spent; the best phrases found by then are returned, words joined by spaces, padded with null.
+public synchronized String[] guessPhrases(final int extraWords) {
+    String[] phrases = new String[3];
+    if (currentNode == null) return phrases;
+
+    // Seed the beam with the ranked completions, scoring rank r of k as (k - r) / (1 + ... + k).
+    int seeds = Math.min(3, rankSuggestions(currentNode));
+    int[][] beam = new int[seeds][];
+    double[] scores = new double[seeds];
+    for (int i = 0; i < seeds; i++) {
+        beam[i] = new int[] {ranked[i]};
+        scores[i] = Math.log((seeds - i) * 2.0 / (seeds * (seeds + 1)));
     }
 
-    return guesses; // Return the array of guesses.
+    int expansions = 0;
+    for (int step = 0; step < extraWords && expansions < phraseExpansionCap; step++) {
+        int[][] nextBeam = new int[beam.length * 3][];
+        double[] nextScores = new double[nextBeam.length];
+        int size = 0;
+        boolean extended = false;
+
+        for (int b = 0; b < beam.length; b++) {
+            int[] phrase = beam[b];
+            // Look the phrase up in the trigram table, backing off to the bigram table at a discount.
+            Map<Integer, Integer> next = null;
+            double backoff = 1.0;
+            if (expansions < phraseExpansionCap) {
+                expansions++;
+                next = trigramsAfter(phrase);
+                if (next == null) {
+                    next = bigramsAfter(phrase);
+                    backoff = 0.4;
+                }
+            }
+
+            int[] best = next == null ? new int[0] : topWords(next, 3);
+            if (best.length == 0) {
+                // Nothing follows this phrase (or the budget ran out): it competes as it is.
+                nextBeam[size] = phrase;
+                nextScores[size++] = scores[b];
+                continue;
+            }
+            int total = 0;
+            for (int count : next.values()) total += count;
+            for (int word : best) {
+                int[] longer = Arrays.copyOf(phrase, phrase.length + 1);
+                longer[phrase.length] = word;
+                nextBeam[size] = longer;
+                nextScores[size++] = scores[b] + Math.log(backoff * next.get(word) / total);
+                extended = true;
+            }
+        }
+        if (!extended) break;
+
+        // Keep the three phrases with the best score per word, so short phrases are not favoured for being short.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        int[][] candidates = nextBeam;
+        double[] candidateScores = nextScores;
+        Arrays.sort(order, (x, y) -> Double.compare(candidateScores[y] / candidates[y].length, candidateScores[x] / candidates[x].length));
+        int kept = Math.min(3, size);
+        beam = new int[kept][];
+        scores = new double[kept];
+        for (int i = 0; i < kept; i++) {
+            beam[i] = candidates[order[i]];
+            scores[i] = candidateScores[order[i]];
+        }
+    }
+
+    for (int i = 0; i < beam.length; i++) {
+        StringBuilder phrase = new StringBuilder();
+        for (int word : beam[i]) {
+            if (phrase.length() > 0) phrase.append(' ');
+            phrase.append(words.word(word));
+        }
+        phrases[i] = phrase.toString();
+    }
+    return phrases;
+}
+
+// Counts of the words seen after the last two words of a phrase, or null. The word before a one-word phrase is
+// the last word typed.
+private Map<Integer, Integer> trigramsAfter(final int[] phrase) {
+    int previousWord = phrase[phrase.length - 1];
+    int prePreviousWord = phrase.length > 1 ? phrase[phrase.length - 2] : lastWord;
+    if (prePreviousWord < 0) return null;
+    Map<Integer, Map<Integer, Integer>> middle = trigramFrequencyMap.get(prePreviousWord);
+    Map<Integer, Integer> trigrams = middle == null ? null : middle.get(previousWord);
+    return trigrams == null || trigrams.isEmpty() ? null : trigrams;
+}
+
+// Counts of the words seen after the last word of a phrase, or null.
+private Map<Integer, Integer> bigramsAfter(final int[] phrase) {
+    Map<Integer, Integer> bigrams = bigramFrequencyMap.get(phrase[phrase.length - 1]);
+    return bigrams == null || bigrams.isEmpty() ? null : bigrams;
+}
+
+// The n most frequent words of a count map, most frequent first.
+private static int[] topWords(final Map<Integer, Integer> counts, final int n) {
+    int[] top = new int[Math.min(n, counts.size())];
+    int[] topCounts = new int[top.length];
+    int size = 0;
+    for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+        int count = entry.getValue();
+        if (size == top.length && count <= topCounts[size - 1]) continue;
+        int j = size < top.length ? size++ : size - 1;
+        while (j > 0 && topCounts[j - 1] < count) {
+            top[j] = top[j - 1];
+            topCounts[j] = topCounts[j - 1];
+            j--;
+        }
+        top[j] = entry.getKey();
+        topCounts[j] = count;
+    }
+    return top;
+}
+
+// Starts a typing session that supports backspace and word replacement without re-walking the trie.
+public Session newSession() {
+    return new Session();
+}
+
+// Editable cursor over the word being typed. For each prefix length it keeps the trie node reached and the
+// guesses computed there, so append and deleteLast are O(1) and replaceWord only walks the changed suffix.
+// Guesses are cached as of when each prefix was typed; returned arrays must not be modified.
+public class Session {
+    private final StringBuilder prefix = new StringBuilder();
+    // nodes[i] is the node for the first i letters (null once the prefix leaves the trie); guessStack[i] its guesses.
+    private TrieNode[] nodes = new TrieNode[16];
+    private String[][] guessStack = new String[16][];
+
+    private Session() {
+        reset();
+    }
+
+    // Adds a letter to the end of the word and returns the guesses for the new prefix.
+    public String[] append(final char letter) {
+        synchronized (SmartWord.this) {
+            int depth = prefix.length();
+            if (depth + 1 == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                guessStack = Arrays.copyOf(guessStack, guessStack.length * 2);
+            }
+            prefix.append(letter);
+
+            TrieNode parent = nodes[depth];
+            TrieNode node = parent == null || letter < 'a' || letter > 'z' ? null : parent.children[letter - 'a'];
+            nodes[depth + 1] = node;
+
+            String[] top = new String[3];
+            if (node != null) {
+                int count = rankSuggestions(node);
+                for (int i = 0; i < 3 && i < count; i++) {
+                    top[i] = words.word(ranked[i]);
+                }
+            }
+            guessStack[depth + 1] = top;
+            return top;
+        }
+    }
+
+    // Removes the last letter and returns the guesses cached for the shorter prefix.
+    public String[] deleteLast() {
+        if (prefix.length() > 0) {
+            prefix.setLength(prefix.length() - 1);
+        }
+        return guessStack[prefix.length()];
+    }
+
+    // Replaces the word being typed, keeping the shared prefix and appending only the letters that differ.
+    public String[] replaceWord(final String word) {
+        int common = 0;
+        int limit = Math.min(word.length(), prefix.length());
+        while (common < limit && word.charAt(common) == prefix.charAt(common)) {
+            common++;
+        }
+        prefix.setLength(common);
+
+        String[] top = guessStack[common];
+        for (int i = common; i < word.length(); i++) {
+            top = append(word.charAt(i));
+        }
+        return top;
+    }
+
+    // Guesses for the current prefix.
+    public String[] guesses() {
+        return guessStack[prefix.length()];
+    }
+
+    // The letters typed so far.
+    public String word() {
+        return prefix.toString();
+    }
+
+    // Finishes the word: sends it as feedback and starts an empty word.
+    public void commit(final boolean isCorrectGuess) {
+        feedback(isCorrectGuess, prefix.toString());
+        reset();
+    }
+
+    // Discards the current word.
+    public void reset() {
+        synchronized (SmartWord.this) {
+            prefix.setLength(0);
+            nodes[0] = trie.root;
+            guessStack[0] = new String[3];
+        }
+    }
 }
 
 
     // Refines a list of suggestions based on bigram and trigram context scores.
-private List<String> refineSuggestionsWithContext(List<String> suggestions, String lastWord, String secondLastWord) {
+private void refineSuggestionsWithContext(int[] suggestions, int count, int lastWord, int secondLastWord) {
     // Retrieve bigram scores for the last word.
-    Map<String, Integer> bigramScores = bigramFrequencyMap.getOrDefault(lastWord, new HashMap<>());
+    Map<Integer, Integer> bigramScores = bigramFrequencyMap.getOrDefault(lastWord, Collections.emptyMap());
 
     // Retrieve trigram scores for the combination of the second-to-last and last words.
-    Map<String, Map<String, Integer>> trigramMap = trigramFrequencyMap.getOrDefault(secondLastWord, new HashMap<>());
-    Map<String, Integer> trigramScores = trigramMap.getOrDefault(lastWord, new HashMap<>());
-
-    // Sort suggestions based on the combined scores from the bigram and trigram maps.
-    suggestions.sort((a, b) -> {
-        int trigramA = bigramScores.getOrDefault(a, 0) + trigramScores.getOrDefault(a, 0);
-        int trigramB = bigramScores.getOrDefault(b, 0) + trigramScores.getOrDefault(b, 0);
-        return trigramB - trigramA;
-    });
-
-    return suggestions; // Return the sorted suggestions.
+    Map<Integer, Map<Integer, Integer>> trigramMap = trigramFrequencyMap.getOrDefault(secondLastWord, Collections.emptyMap());
+    Map<Integer, Integer> trigramScores = trigramMap.getOrDefault(lastWord, Collections.emptyMap());
+    if (bigramScores.isEmpty() && trigramScores.isEmpty()) return;
+
+    // Stable insertion sort on the combined scores from the bigram and trigram maps; lists are at most suggestionCap long.
+    int[] scores = new int[count];
+    for (int i = 0; i < count; i++) {
+        int id = suggestions[i];
+        int score = bigramScores.getOrDefault(id, 0) + trigramScores.getOrDefault(id, 0);
+        int j = i;
+        while (j > 0 && scores[j - 1] < score) {
+            suggestions[j] = suggestions[j - 1];
+            scores[j] = scores[j - 1];
+            j--;
+        }
+        suggestions[j] = id;
+        scores[j] = score;
+    }
 }
 
 // Updates system feedback based on user input and correct word selection.
-public void feedback(final boolean isCorrectGuess, final String correctWord) {
+public synchronized void feedback(final boolean isCorrectGuess, final String correctWord) {
+    SmartWordMetrics.FeedbackEvent event = new SmartWordMetrics.FeedbackEvent();
+    event.begin();
+    metrics.feedbackCount++;
+
     // Validate the correct word; it must be non-null and consist of only lowercase letters.
     if (correctWord == null || !correctWord.matches("^[a-z]+$")) return;
 
     // Adjust word frequency based on whether the guess was correct.
-    int adjustment = isCorrectGuess ? 50 : -2; 
-    wordFrequencyMap.put(correctWord, Math.max(0, wordFrequencyMap.getOrDefault(correctWord, 0) + adjustment));
+    learnWord(correctWord, isCorrectGuess ? correctBonus : -wrongPenalty);
+
+    // The word is finished, so the next keystroke starts a new one from the root.
+    if (speculationExecutor != null) {
+        discardSpeculation(-1);
+        speculate(trie.root);
+    }
+
+    if (event.shouldCommit()) {
+        event.correctGuess = isCorrectGuess;
+        event.wordLength = correctWord.length();
+        event.nodesVisited = correctWord.length();
+        event.commit();
+    }
+}
+
+// Feedback for an accepted phrase from guessPhrases(): every word counts as correctly guessed, and all the
+// phrase's bigrams and trigrams, including those joining it to the words typed before, are added in one call.
+// Nothing is learned unless every word is valid.
+public synchronized void feedbackPhrase(final String phrase) {
+    SmartWordMetrics.FeedbackEvent event = new SmartWordMetrics.FeedbackEvent();
+    event.begin();
+    metrics.feedbackCount++;
+
+    if (phrase == null) return;
+    String[] phraseWords = phrase.trim().split(" +");
+    for (String word : phraseWords) {
+        if (!word.matches("^[a-z]+$")) return;
+    }
+
+    for (String word : phraseWords) {
+        learnWord(word, correctBonus);
+    }
+
+    if (event.shouldCommit()) {
+        event.correctGuess = true;
+        event.wordLength = phrase.length();
+        event.nodesVisited = phrase.length() - phraseWords.length + 1;
+        event.commit();
+    }
+}
+
+// Applies a frequency adjustment to a word, adds its n-grams with the current context, and makes it the last word.
+private void learnWord(final String correctWord, final int adjustment) {
+    modelVersion++;
+    ownWords();
+    int word = words.intern(correctWord);
+    words.setFrequency(word, Math.max(0, words.frequency(word) + adjustment));
 
     // Update the Trie to reflect the new word frequency.
-    trie.updateBestSuggestions(correctWord, wordFrequencyMap);
+    trie.updateBestSuggestions(correctWord, word, words, suggestionCap);
 
     // Update the bigram frequency map using the last word as context.
-    if (lastWord != null) {
-        bigramFrequencyMap
-            .computeIfAbsent(lastWord, k -> new HashMap<>())
-            .merge(correctWord, 1, Integer::sum);
+    if (lastWord >= 0) {
+        bigramFrequencyMap = own(bigramFrequencyMap);
+        ownChild(bigramFrequencyMap, lastWord).merge(word, 1, Integer::sum);
     }
 
     // Update the trigram frequency map using the last two words as context.
-    if (secondLastWord != null && lastWord != null) {
-        trigramFrequencyMap
-            .computeIfAbsent(secondLastWord, k -> new HashMap<>())
-            .computeIfAbsent(lastWord, k -> new HashMap<>())
-            .merge(correctWord, 1, Integer::sum);
+    if (secondLastWord >= 0 && lastWord >= 0) {
+        trigramFrequencyMap = own(trigramFrequencyMap);
+        ownChild(ownChild(trigramFrequencyMap, secondLastWord), lastWord).merge(word, 1, Integer::sum);
     }
 
     // Update the context for future guesses.
     secondLastWord = lastWord;
-    lastWord = correctWord;
+    lastWord = word;
+}
+
+// Builds a dictionary trie over sorted, distinct words, either in one sorted pass or by inserting the words one by
+// one and then computing the suggestion lists; returns the node count. Lets BenchTrieBuild time the two alone.
+static long buildDictionaryTrie(final List<String> sortedWords, final WordArena words, final boolean bulk, final int cap) {
+    Trie trie;
+    if (bulk) {
+        trie = Trie.buildSorted(sortedWords, words, cap);
+    } else {
+        trie = new Trie();
+        for (String word : sortedWords) {
+            trie.insert(word, words.frequency(words.find(word)));
+        }
+        trie.precomputeBestSuggestions(words, cap);
+    }
+    return trie.nodeCount;
+}
+
+// Scoring parameters, in the order setParameters() takes them.
+synchronized int[] parameters() {
+    return new int[] {correctBonus, wrongPenalty, suggestionCap, ngramCap};
+}
+
+// Hits and misses of the word arena's String cache.
+synchronized long wordCacheHits() {
+    return words.cacheHits();
+}
+
+synchronized long wordCacheMisses() {
+    return words.cacheMisses();
+}
+
+synchronized void resetWordCacheCounts() {
+    words.resetCacheCounts();
+}
+
+// Number of distinct words known to the model.
+synchronized int vocabularySize() {
+    return words.size();
+}
+
+// Total length of all vocabulary words.
+synchronized long vocabularyChars() {
+    return words.chars();
+}
+
+// Number of nodes allocated in the trie.
+synchronized long trieNodeCount() {
+    return trie.nodeCount;
+}
+
+// Number of entries across all bigram tables.
+synchronized long bigramCount() {
+    long count = 0;
+    for (Map<Integer, Integer> next : bigramFrequencyMap.values()) {
+        count += next.size();
+    }
+    return count;
+}
+
+// Number of entries across all trigram tables.
+synchronized long trigramCount() {
+    long count = 0;
+    for (Map<Integer, Map<Integer, Integer>> middle : trigramFrequencyMap.values()) {
+        for (Map<Integer, Integer> next : middle.values()) {
+            count += next.size();
+        }
+    }
+    return count;
+}
+
+// Copies the trained model into an off-heap engine: vocabulary, per-node suggestions, n-gram counts and context.
+synchronized void exportTo(OffHeapSmartWord target) {
+    for (int id = 0; id < words.size(); id++) {
+        String word = words.word(id);
+        target.addWord(word, words.frequency(id), trie.contains(word));
+    }
+
+    // Visit every trie node with its prefix and hand over its suggestion list.
+    Deque<TrieNode> stack = new ArrayDeque<>();
+    Deque<String> prefixes = new ArrayDeque<>();
+    stack.push(trie.root);
+    prefixes.push("");
+    while (!stack.isEmpty()) {
+        TrieNode node = stack.pop();
+        String prefix = prefixes.pop();
+        List<String> suggestions = new ArrayList<>(node.suggestionCount);
+        for (int i = 0; i < node.suggestionCount; i++) {
+            suggestions.add(words.word(node.bestSuggestions[i]));
+        }
+        target.setSuggestions(prefix, suggestions);
+        for (int i = 0; i < 26; i++) {
+            if (node.children[i] != null) {
+                stack.push(node.children[i]);
+                prefixes.push(prefix + (char) ('a' + i));
+            }
+        }
+    }
+
+    bigramFrequencyMap.forEach((previousWord, next) ->
+        next.forEach((word, count) -> target.addBigram(words.word(previousWord), words.word(word), count)));
+    trigramFrequencyMap.forEach((prePreviousWord, middle) ->
+        middle.forEach((previousWord, next) ->
+            next.forEach((word, count) ->
+                target.addTrigram(words.word(prePreviousWord), words.word(previousWord), words.word(word), count))));
+
+    target.setContext(lastWord < 0 ? null : words.word(lastWord), secondLastWord < 0 ? null : words.word(secondLastWord));
+}
+
+// Walks the trained model and estimates the heap retained by each of its structures.
+public synchronized SmartWordFootprint footprint() {
+    SmartWordFootprint footprint = new SmartWordFootprint();
+
+    footprint.addWordArena(words);
+
+    footprint.addNestedMap(SmartWordFootprint.Component.BIGRAM_MAP, bigramFrequencyMap);
+    for (Map<Integer, Integer> next : bigramFrequencyMap.values()) {
+        footprint.addCountMap(SmartWordFootprint.Component.BIGRAM_MAP, next);
+    }
+
+    footprint.addNestedMap(SmartWordFootprint.Component.TRIGRAM_MAP, trigramFrequencyMap);
+    for (Map<Integer, Map<Integer, Integer>> middle : trigramFrequencyMap.values()) {
+        footprint.addNestedMap(SmartWordFootprint.Component.TRIGRAM_MAP, middle);
+        for (Map<Integer, Integer> next : middle.values()) {
+            footprint.addCountMap(SmartWordFootprint.Component.TRIGRAM_MAP, next);
+        }
+    }
+
+    // Visit every trie node, counting its empty child slots.
+    Deque<TrieNode> stack = new ArrayDeque<>();
+    stack.push(trie.root);
+    while (!stack.isEmpty()) {
+        TrieNode node = stack.pop();
+        int nullChildren = 0;
+        for (TrieNode child : node.children) {
+            if (child == null) {
+                nullChildren++;
+            } else {
+                stack.push(child);
+            }
+        }
+        footprint.addTrieNode(nullChildren);
+        footprint.addSuggestionList(node.bestSuggestions);
+    }
+
+    return footprint;
+}
+
+// Prunes words and n-gram entries whose utility is below minUtility, then repacks the trie; returns the words removed.
+public synchronized int prune(final int minUtility) {
+    modelVersion++;
+    int[] utility = wordUtilities();
+
+    // Copy the words worth keeping into a fresh arena; remap[id] is a word's new id, or -1 if it was dropped.
+    WordArena kept = new WordArena();
+    kept.copyCacheCounts(words);
+    int[] remap = new int[words.size()];
+    for (int id = 0; id < words.size(); id++) {
+        if (utility[id] < minUtility) {
+            remap[id] = -1;
+        } else {
+            remap[id] = kept.intern(words.word(id));
+            kept.setFrequency(remap[id], words.frequency(id));
+        }
+    }
+    int removed = words.size() - kept.size();
+
+    // Rebuild the n-gram tables without entries that are rare or mention a removed word.
+    Map<Integer, Map<Integer, Integer>> bigrams = newTable();
+    bigramFrequencyMap.forEach((previousWord, next) -> {
+        Map<Integer, Integer> counts = pruneCounts(next, remap, minUtility);
+        if (remap[previousWord] >= 0 && !counts.isEmpty()) bigrams.put(remap[previousWord], counts);
+    });
+    Map<Integer, Map<Integer, Map<Integer, Integer>>> trigrams = newTable();
+    trigramFrequencyMap.forEach((prePreviousWord, middle) -> {
+        if (remap[prePreviousWord] < 0) return;
+        Map<Integer, Map<Integer, Integer>> keptMiddle = newTable();
+        middle.forEach((previousWord, next) -> {
+            Map<Integer, Integer> counts = pruneCounts(next, remap, minUtility);
+            if (remap[previousWord] >= 0 && !counts.isEmpty()) keptMiddle.put(remap[previousWord], counts);
+        });
+        if (!keptMiddle.isEmpty()) trigrams.put(remap[prePreviousWord], keptMiddle);
+    });
+
+    // Rebuild the trie so surviving nodes are allocated together and dead branches are released.
+    trie = trie.repack(kept, remap);
+    words = kept;
+    ownsWords = true;
+    bigramFrequencyMap = bigrams;
+    trigramFrequencyMap = trigrams;
+    if (ownedTables != null) {
+        // Forget the previous generation so only the tables just built are held as owned.
+        ownedTables = Collections.newSetFromMap(new IdentityHashMap<>());
+        ownedTables.add(bigrams);
+        ownedTables.addAll(bigrams.values());
+        ownedTables.add(trigrams);
+        trigrams.values().forEach(middle -> {
+            ownedTables.add(middle);
+            ownedTables.addAll(middle.values());
+        });
+    }
+    lastWord = lastWord < 0 ? -1 : remap[lastWord];
+    secondLastWord = secondLastWord < 0 ? -1 : remap[secondLastWord];
+    if (currentNode != null) {
+        currentNode = null;
+        Arrays.fill(guesses, null);
+    }
+    return removed;
+}
+
+// Prunes at doubling utility levels until the estimated footprint fits targetBytes; returns the level reached.
+public synchronized int compact(final long targetBytes) {
+    int level = 1;
+    while (footprint().totalBytes() > targetBytes && words.size() > 0) {
+        level *= 2;
+        prune(level);
+    }
+    return level;
+}
+
+// Utility of each known word by id: its frequency plus the counts of the n-grams that predict it.
+private int[] wordUtilities() {
+    int[] utility = new int[words.size()];
+    for (int id = 0; id < utility.length; id++) {
+        utility[id] = words.frequency(id);
+    }
+    for (Map<Integer, Integer> next : bigramFrequencyMap.values()) {
+        next.forEach((word, count) -> utility[word] += count);
+    }
+    for (Map<Integer, Map<Integer, Integer>> middle : trigramFrequencyMap.values()) {
+        for (Map<Integer, Integer> next : middle.values()) {
+            next.forEach((word, count) -> utility[word] += count);
+        }
+    }
+    return utility;
+}
+
+// Copy of a count table without entries below minCount or naming a removed word, renumbered to the new ids.
+private Map<Integer, Integer> pruneCounts(Map<Integer, Integer> map, int[] remap, int minCount) {
+    Map<Integer, Integer> kept = newTable();
+    map.forEach((word, count) -> {
+        if (count >= minCount && remap[word] >= 0) kept.put(remap[word], count);
+    });
+    return kept;
 }
 
 // Trie implementation for storing and querying words.
 private static class Trie {
-    private final TrieNode root = new TrieNode(); 
+    // Stamped on the nodes this trie may modify in place; nodes with another owner are shared with a fork.
+    private final Object owner = new Object();
+    private TrieNode root;
+    private long nodeCount = 1;
+
+    Trie() {
+        root = new TrieNode(owner);
+    }
+
+    // A trie over the same nodes that copies each node before modifying it.
+    public Trie share() {
+        Trie shared = new Trie();
+        shared.root = root;
+        shared.nodeCount = nodeCount;
+        return shared;
+    }
+
+    // Returns the root, copying it first if it is shared.
+    private TrieNode writableRoot() {
+        if (root.owner != owner) root = new TrieNode(root, owner);
+        return root;
+    }
+
+    // Returns a child of a writable node, copying it first if it is shared.
+    private TrieNode writableChild(TrieNode parent, int index) {
+        TrieNode child = parent.children[index];
+        if (child != null && child.owner != owner) {
+            child = new TrieNode(child, owner);
+            parent.children[index] = child;
+        }
+        return child;
+    }
+
     // Inserts a word into the Trie along with its frequency.
-    public void insert(final String word, final int frequency) {
-        TrieNode node = root;
-        for (char c : word.toCharArray()) {
-            int index = c - 'a'; 
-            if (node.children[index] == null) {
-                node.children[index] = new TrieNode(); 
+    public void insert(final CharSequence word, final int frequency) {
+        TrieNode node = writableRoot();
+        for (int i = 0; i < word.length(); i++) {
+            int index = word.charAt(i) - 'a'; 
+            TrieNode child = writableChild(node, index);
+            if (child == null) {
+                child = new TrieNode(owner); 
+                node.children[index] = child;
+                nodeCount++;
             }
-            node = node.children[index];
+            node = child;
         }
         node.isWord = true; 
         node.frequency = frequency; 
     }
 
+    // Builds a trie from words in ascending order in one pass, keeping the path to the previous word so each word
+    // only adds the nodes past the prefix they share. A node is complete once a word leaves its subtree, and its
+    // suggestions are then folded into its parent's, so every list holds the node's top cap words by frequency.
+    static Trie buildSorted(List<String> sortedWords, WordArena words, int cap) {
+        Trie trie = new Trie();
+        TrieNode[] path = new TrieNode[32];
+        path[0] = trie.root;
+        String previous = "";
+
+        for (String word : sortedWords) {
+            int compare = word.compareTo(previous);
+            if (compare == 0) continue;
+            if (compare < 0) throw new IllegalArgumentException("words are not sorted: " + previous + ", " + word);
+
+            int common = 0;
+            int limit = Math.min(word.length(), previous.length());
+            while (common < limit && word.charAt(common) == previous.charAt(common)) {
+                common++;
+            }
+
+            // Nodes past the shared prefix are complete, deepest first.
+            for (int depth = previous.length(); depth > common; depth--) {
+                mergeSorted(path[depth - 1], path[depth], words, cap);
+            }
+
+            if (path.length <= word.length()) {
+                path = Arrays.copyOf(path, word.length() * 2);
+            }
+            for (int depth = common; depth < word.length(); depth++) {
+                TrieNode child = new TrieNode(trie.owner);
+                path[depth].children[word.charAt(depth) - 'a'] = child;
+                path[depth + 1] = child;
+                trie.nodeCount++;
+            }
+
+            int id = words.find(word);
+            TrieNode node = path[word.length()];
+            node.isWord = true;
+            node.frequency = words.frequency(id);
+            node.addSuggestion(id);
+            previous = word;
+        }
+
+        for (int depth = previous.length(); depth > 0; depth--) {
+            mergeSorted(path[depth - 1], path[depth], words, cap);
+        }
+        return trie;
+    }
+
+    // Merges a complete child's suggestions into its parent's, both ordered by frequency, keeping the first cap.
+    // Ties keep the parent's entries first, which matches mergeSuggestions.
+    private static void mergeSorted(TrieNode parent, TrieNode child, WordArena words, int cap) {
+        int[] merged = new int[Math.min(cap, parent.suggestionCount + child.suggestionCount)];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            boolean fromChild = i == parent.suggestionCount
+                || (j < child.suggestionCount && words.frequency(child.bestSuggestions[j]) > words.frequency(parent.bestSuggestions[i]));
+            merged[k] = fromChild ? child.bestSuggestions[j++] : parent.bestSuggestions[i++];
+        }
+        parent.bestSuggestions = merged;
+        parent.suggestionCount = merged.length;
+    }
+
+    // Copies the nodes that still lead to a kept word into a freshly allocated trie. Each copied node keeps its
+    // surviving suggestions in their order, and only the slots freed by pruned words are refilled from the surviving
+    // words below it, so repacking without removing anything leaves every list as it was.
+    public Trie repack(WordArena kept, int[] remap) {
+        Trie packed = new Trie();
+        packed.copyLiveNodes(root, packed.root, new StringBuilder(), kept, remap);
+        return packed;
+    }
+
+    // Depth-first copy of one node into this trie; returns false if nothing below it survives.
+    private boolean copyLiveNodes(TrieNode from, TrieNode to, StringBuilder prefix, WordArena kept, int[] remap) {
+        int id = from.isWord ? kept.find(prefix) : -1;
+        boolean live = id >= 0;
+        to.isWord = live;
+        to.frequency = live ? from.frequency : 0;
+
+        int[] suggestions = new int[from.suggestionCount];
+        int count = 0;
+        for (int i = 0; i < from.suggestionCount; i++) {
+            int keptId = remap[from.bestSuggestions[i]];
+            if (keptId >= 0) suggestions[count++] = keptId;
+        }
+
+        // The node's own word and its children's (already repacked) lists are the candidates for freed slots.
+        int[] candidates = new int[count < suggestions.length ? 1 : 0];
+        int candidateCount = 0;
+        if (live && candidates.length > 0) candidates[candidateCount++] = id;
+
+        for (int i = 0; i < 26; i++) {
+            if (from.children[i] == null) continue;
+
+            TrieNode copy = new TrieNode(owner);
+            prefix.append((char) ('a' + i));
+            if (copyLiveNodes(from.children[i], copy, prefix, kept, remap)) {
+                to.children[i] = copy;
+                nodeCount++;
+                live = true;
+                if (candidates.length > 0) {
+                    candidates = Arrays.copyOf(candidates, candidateCount + copy.suggestionCount);
+                    System.arraycopy(copy.bestSuggestions, 0, candidates, candidateCount, copy.suggestionCount);
+                    candidateCount += copy.suggestionCount;
+                }
+            }
+            prefix.setLength(prefix.length() - 1);
+        }
+
+        // Fill each freed slot with the most frequent candidate not listed yet.
+        while (count < suggestions.length) {
+            int best = -1;
+            for (int i = 0; i < candidateCount; i++) {
+                int candidate = candidates[i];
+                if ((best < 0 || kept.frequency(candidate) > kept.frequency(best)) && !contains(suggestions, count, candidate)) {
+                    best = candidate;
+                }
+            }
+            if (best < 0) break;
+            suggestions[count++] = best;
+        }
+        if (count > 0) {
+            to.bestSuggestions = count == suggestions.length ? suggestions : Arrays.copyOf(suggestions, count);
+            to.suggestionCount = count;
+        }
+        return live;
+    }
+
+    private static boolean contains(int[] ids, int n, int id) {
+        for (int i = 0; i < n; i++) {
+            if (ids[i] == id) return true;
+        }
+        return false;
+    }
+
     // Precomputes the best suggestions for each node in the Trie.
-    public void precomputeBestSuggestions(Map<String, Integer> wordFrequencyMap) {
-        computeBestSuggestions(root, "", wordFrequencyMap);
+    public void precomputeBestSuggestions(WordArena words, int cap) {
+        computeBestSuggestions(root, new StringBuilder(), words, cap);
     }
 
     // Recursively computes the best suggestions for a Trie node.
-    private void computeBestSuggestions(TrieNode node, String prefix, Map<String, Integer> wordFrequencyMap) {
+    private void computeBestSuggestions(TrieNode node, StringBuilder prefix, WordArena words, int cap) {
         if (node == null) return;
 
         // Add the current word to suggestions if it's a complete word.
-        if (node.isWord) {
-            node.bestSuggestions.add(prefix);
+        if (node.isWord && words.find(prefix) >= 0) {
+            node.addSuggestion(words.find(prefix));
         }
 
         // Recursively process child nodes and merge their suggestions.
         for (int i = 0; i < 26; i++) {
             if (node.children[i] != null) {
-                computeBestSuggestions(node.children[i], prefix + (char) ('a' + i), wordFrequencyMap);
+                prefix.append((char) ('a' + i));
+                computeBestSuggestions(node.children[i], prefix, words, cap);
+                prefix.setLength(prefix.length() - 1);
 
                 TrieNode child = node.children[i];
-                mergeSuggestions(node.bestSuggestions, child.bestSuggestions, wordFrequencyMap);
+                mergeSuggestions(node, child, words, cap);
             }
         }
     }
 
-    // Retrieves a list of suggestions for a given prefix from the Trie.
-    public List<String> getSuggestions(TrieNode node, String prefix, int count, Map<String, Integer> wordFrequencyMap) {
-        // Use a priority queue to rank suggestions by frequency.
-        PriorityQueue<Map.Entry<String, Integer>> pq = new PriorityQueue<>(
-            (a, b) -> b.getValue() - a.getValue()
-        );
-
-        // Add suggestions from the node's best suggestions list.
-        for (String suggestion : node.bestSuggestions) {
-            pq.add(Map.entry(suggestion, wordFrequencyMap.getOrDefault(suggestion, 0)));
+    // Returns true if word was inserted as a complete word.
+    public boolean contains(String word) {
+        TrieNode node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            int index = word.charAt(i) - 'a';
+            node = index < 0 || index >= 26 ? null : node.children[index];
         }
+        return node != null && node.isWord;
+    }
 
-        // Collect up to 'count' suggestions in sorted order.
-        List<String> results = new ArrayList<>();
-        while (!pq.isEmpty() && results.size() < count) {
-            results.add(pq.poll().getKey());
+    // The count most frequent suggestions of node in out, in the order getSuggestions would give them, found by
+    // selection instead of sorting the whole list; returns how many there are.
+    public int getTopSuggestions(TrieNode node, int count, WordArena words, int[] out) {
+        int limit = Math.min(count, node.suggestionCount);
+        int size = 0;
+        for (int i = 0; i < node.suggestionCount; i++) {
+            int id = node.bestSuggestions[i];
+            int frequency = words.frequency(id);
+            if (size == limit && (limit == 0 || words.frequency(out[size - 1]) >= frequency)) continue;
+            int j = size < limit ? size++ : size - 1;
+            while (j > 0 && words.frequency(out[j - 1]) < frequency) {
+                out[j] = out[j - 1];
+                j--;
+            }
+            out[j] = id;
         }
+        return size;
+    }
 
-        return results;
+    // Copies up to count of a node's suggestions into out, most frequent first; returns how many were copied.
+    public int getSuggestions(TrieNode node, int count, WordArena words, int[] out) {
+        int n = node.suggestionCount;
+        System.arraycopy(node.bestSuggestions, 0, out, 0, n);
+        sortByFrequency(out, n, words);
+        return Math.min(n, count);
     }
 
     // Updates the best suggestions in the Trie for a given word.
-    public void updateBestSuggestions(String word, Map<String, Integer> wordFrequencyMap) {
-        TrieNode node = root;
-        for (char c : word.toCharArray()) {
-            int index = c - 'a'; 
+    public void updateBestSuggestions(String word, int id, WordArena words, int cap) {
+        TrieNode node = writableRoot();
+        for (int i = 0; i < word.length(); i++) {
+            int index = word.charAt(i) - 'a'; 
             if (node.children[index] == null) return;
-            node = node.children[index];
+            node = writableChild(node, index);
 
             // Add the word to the node's best suggestions if not already present.
-            if (!node.bestSuggestions.contains(word)) {
-                node.bestSuggestions.add(word);
+            if (!node.hasSuggestion(id)) {
+                node.addSuggestion(id);
 
-                // Maintain a maximum of 10 suggestions, sorted by frequency.
-                if (node.bestSuggestions.size() > 10) {
-                    node.bestSuggestions.sort((a, b) -> wordFrequencyMap.get(b) - wordFrequencyMap.get(a));
-                    node.bestSuggestions.remove(node.bestSuggestions.size() - 1);
+                // Maintain a maximum of cap suggestions, sorted by frequency.
+                if (node.suggestionCount > cap) {
+                    sortByFrequency(node.bestSuggestions, node.suggestionCount, words);
+                    node.suggestionCount--;
                 }
             }
         }
     }
 
     // Merges suggestions from a child node into the parent node's list.
-    private void mergeSuggestions(List<String> parent, List<String> child, Map<String, Integer> wordFrequencyMap) {
-        Set<String> merged = new HashSet<>(parent); 
-        merged.addAll(child);
+    private void mergeSuggestions(TrieNode parent, TrieNode child, WordArena words, int cap) {
+        for (int i = 0; i < child.suggestionCount; i++) {
+            if (!parent.hasSuggestion(child.bestSuggestions[i])) {
+                parent.addSuggestion(child.bestSuggestions[i]);
+            }
+        }
+        sortByFrequency(parent.bestSuggestions, parent.suggestionCount, words);
+        parent.suggestionCount = Math.min(parent.suggestionCount, cap);
+    }
+
+    // Stable insertion sort of the first n ids, highest frequency first; lists are at most a few dozen long.
+    private static void sortByFrequency(int[] ids, int n, WordArena words) {
+        for (int i = 1; i < n; i++) {
+            int id = ids[i];
+            int frequency = words.frequency(id);
+            int j = i;
+            while (j > 0 && words.frequency(ids[j - 1]) < frequency) {
+                ids[j] = ids[j - 1];
+                j--;
+            }
+            ids[j] = id;
+        }
+    }
+}
+
+// Checkpointed ingestion position for a followed message file, stored next to it as "<file>.ckpt".
+private static class TailState {
+    private final Path checkpoint;
+    private long offset = 0;
+    private String previousWord = null;
+    private String prePreviousWord = null;
+
+    private TailState(Path checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    // Loads the checkpoint for a message file, or starts from the beginning if there is none.
+    private static TailState load(String messageFile) {
+        TailState state = new TailState(Paths.get(messageFile + ".ckpt"));
+        if (!Files.exists(state.checkpoint)) return state;
+
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(state.checkpoint)) {
+            props.load(reader);
+            state.offset = Long.parseLong(props.getProperty("offset", "0"));
+            state.previousWord = props.getProperty("previousWord");
+            state.prePreviousWord = props.getProperty("prePreviousWord");
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading checkpoint, starting over: " + e.getMessage());
+            state.reset();
+        }
+        return state;
+    }
+
+    // Writes the checkpoint atomically so a crash never leaves a half-written file.
+    private void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("offset", Long.toString(offset));
+        if (previousWord != null) props.setProperty("previousWord", previousWord);
+        if (prePreviousWord != null) props.setProperty("prePreviousWord", prePreviousWord);
+
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            props.store(writer, null);
+        }
+        Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        parent.clear();
-        parent.addAll(
-            merged.stream()
-                .sorted((a, b) -> wordFrequencyMap.getOrDefault(b, 0) - wordFrequencyMap.getOrDefault(a, 0))
-                .limit(10) 
-                .toList()
-        );
+    private void reset() {
+        offset = 0;
+        previousWord = null;
+        prePreviousWord = null;
     }
 }
 
 // Trie node structure for storing children and metadata about words.
 private static class TrieNode {
-    private final TrieNode[] children = new TrieNode[26]; 
+    private static final int[] NO_SUGGESTIONS = new int[0];
+
+    private final TrieNode[] children; 
     private boolean isWord; 
     private int frequency = 0;
-    private final List<String> bestSuggestions = new ArrayList<>(3); 
+    // Word ids of the best suggestions for this prefix; only the first suggestionCount are in use.
+    private int[] bestSuggestions = NO_SUGGESTIONS; 
+    private int suggestionCount = 0;
+    // The trie allowed to modify this node in place.
+    private final Object owner;
+
+    private TrieNode(Object owner) {
+        this.children = new TrieNode[26];
+        this.owner = owner;
+    }
+
+    // Copy of a shared node for a trie that is about to modify it.
+    private TrieNode(TrieNode from, Object owner) {
+        this.children = from.children.clone();
+        this.isWord = from.isWord;
+        this.frequency = from.frequency;
+        this.bestSuggestions = from.bestSuggestions.clone();
+        this.suggestionCount = from.suggestionCount;
+        this.owner = owner;
+    }
+
+    private boolean hasSuggestion(int id) {
+        for (int i = 0; i < suggestionCount; i++) {
+            if (bestSuggestions[i] == id) return true;
+        }
+        return false;
+    }
+
+    private void addSuggestion(int id) {
+        if (suggestionCount == bestSuggestions.length) {
+            bestSuggestions = Arrays.copyOf(bestSuggestions, Math.max(3, suggestionCount + (suggestionCount >> 1)));
+        }
+        bestSuggestions[suggestionCount++] = id;
+    }
+}
 }
@@ -0,0 +1,113 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+
+  Reusable form of EvalSmartWord's guessing loop, for tools that evaluate
+  many models in one JVM.
+
+  The keystroke simulation and the accuracy/time measurements are the same as
+  EvalSmartWord's: each word is typed letter by letter until one of the three
+  guesses matches, feedback is given after every guess, and guess plus
+  feedback time is measured as CPU time of the calling thread, so concurrent
+  evaluations do not count each other's work.
+ */
+public class SmartWordEval {
+
+    // Outcome of typing one new-message file into a model.
+    public static class Result {
+        public final double accuracy;
+        public final double avgTime;
+        public final long guesses;
+        public final long words;
+
+        Result(double accuracy, double avgTime, long guesses, long words) {
+            this.accuracy = accuracy;
+            this.avgTime = avgTime;
+            this.guesses = guesses;
+            this.words = words;
+        }
+
+        // Overall score as defined by EvalSmartWord for the given memory in bytes.
+        public double score(long memory) {
+            return accuracy * accuracy / Math.sqrt(avgTime * memory);
+        }
+    }
+
+    private static final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    // Running totals of one evaluation.
+    static class Tally {
+        private double totalPercSkipped = 0.0;
+        private long totalWords = 0;
+        private long totalGuesses = 0;
+        private long totalElapsedTime = 0;
+
+        Result result() {
+            double accuracy = totalWords == 0 ? 0.0 : totalPercSkipped / totalWords;
+            double avgTime = totalGuesses == 0 ? 0.0 : (totalElapsedTime / 1.0E9) / totalGuesses;
+            return new Result(accuracy, avgTime, totalGuesses, totalWords);
+        }
+    }
+
+    // Simulates typing newMessageFile into sw and returns accuracy and average guess time.
+    public static Result evaluate(WordPredictor sw, String newMessageFile) throws IOException {
+        Tally tally = new Tally();
+        try (BufferedReader inFile = new BufferedReader(new FileReader(newMessageFile))) {
+            String line;
+            while ((line = inFile.readLine()) != null) {
+                String[] words = line.replaceAll("\\s+", " ").split(" ");
+                for (int indexWord = 0; indexWord < words.length; indexWord++) {
+                    typeWord(sw, words[indexWord].replaceAll("[^a-zA-Z]", ""), indexWord, tally, null);
+                }
+            }
+        }
+        return tally.result();
+    }
+
+    // Types one word (punctuation already removed) letter by letter until a guess matches or the word is complete,
+    // adding to tally. If log is not null, writes one line per guess: word position, letter position, letter, the
+    // three guesses and whether one matched.
+    static void typeWord(WordPredictor sw, String word, int indexWord, Tally tally, PrintWriter log) {
+        tally.totalWords++;
+        int noOfLettersInWord = word.length();
+        int indexLetter = 0;
+        boolean isCorrectGuess = false;
+
+        while (indexLetter < noOfLettersInWord && !isCorrectGuess) {
+            tally.totalGuesses++;
+            long startTime = bean.getCurrentThreadCpuTime();
+            String[] guesses = sw.guess(word.charAt(indexLetter), indexLetter, indexWord);
+            long endTime = bean.getCurrentThreadCpuTime();
+            tally.totalElapsedTime += endTime - startTime;
+
+            String correctGuess = null;
+            for (int indexGuess = 0; indexGuess < 3; indexGuess++) {
+                if (word.equalsIgnoreCase(guesses[indexGuess])) {
+                    isCorrectGuess = true;
+                    correctGuess = guesses[indexGuess];
+                    tally.totalPercSkipped += ((noOfLettersInWord - 1 - indexLetter) * 100.) / noOfLettersInWord;
+                    break;
+                }
+            }
+            if (log != null) {
+                log.println(indexWord + " " + indexLetter + " " + word.charAt(indexLetter) + " "
+                    + guesses[0] + " " + guesses[1] + " " + guesses[2] + (isCorrectGuess ? " +" : " -"));
+            }
+
+            startTime = bean.getCurrentThreadCpuTime();
+            if (indexLetter == noOfLettersInWord - 1)
+                sw.feedback(isCorrectGuess, word);
+            else
+                sw.feedback(isCorrectGuess, correctGuess);
+            endTime = bean.getCurrentThreadCpuTime();
+            tally.totalElapsedTime += endTime - startTime;
+
+            indexLetter++;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/*
+
+  Estimates how a trained SmartWord's heap is split across its data structures.
+
+  SmartWord.footprint() walks the word arena, the trie and the frequency maps
+  and feeds every object it owns into one of the components below. Sizes are
+  estimated from the HotSpot object layout (header, reference width, 8-byte
+  alignment) rather than measured, so they are close to but not exactly what
+  a heap dump would show. Word text is held once, in the arena; the maps and
+  suggestion lists hold int word ids.
+ */
+public class SmartWordFootprint {
+
+    // Components a SmartWord's memory is attributed to, in walk order.
+    enum Component {
+        WORD_ARENA("words (WordArena)"),
+        BIGRAM_MAP("bigramFrequencyMap"),
+        TRIGRAM_MAP("trigramFrequencyMap"),
+        TRIE_NODES("TrieNode"),
+        TRIE_CHILDREN("TrieNode.children[26]"),
+        BEST_SUGGESTIONS("bestSuggestions");
+
+        private final String label;
+
+        Component(String label) {
+            this.label = label;
+        }
+    }
+
+    // Object layout of the running JVM.
+    private final int header;
+    private final int arrayHeader;
+    private final int ref;
+
+    private final long[] objects = new long[Component.values().length];
+    private final long[] bytes = new long[Component.values().length];
+
+    private long childSlots = 0;
+    private long nullChildSlots = 0;
+
+    SmartWordFootprint() {
+        boolean compressedOops = compressedOops();
+        header = compressedOops ? 12 : 16;
+        arrayHeader = compressedOops ? 16 : 24;
+        ref = compressedOops ? 4 : 8;
+    }
+
+    // Charges the word arena: the object and its five arrays, the perfect hash and its seeds once the dictionary is
+    // frozen, and each cached String with its entry and Latin-1 byte array.
+    void addWordArena(WordArena words) {
+        add(Component.WORD_ARENA, 6, align(header + 6 * ref + 3 * 4 + 2 * 8) + 5 * arrayHeader + words.arrayBytes(ref));
+        if (words.dictionarySize() > 0) {
+            add(Component.WORD_ARENA, 2, align(header + ref + 4) + arrayHeader);
+        }
+        long entry = align(header + 4 + ref);
+        long string = align(header + ref + 4 + 1 + 1);
+        for (int length : words.cachedLengths()) {
+            add(Component.WORD_ARENA, 3, entry + string + align(arrayHeader + length));
+        }
+    }
+
+    // Charges one TrieNode and its 26-slot children array.
+    void addTrieNode(int nullChildren) {
+        add(Component.TRIE_NODES, 1, align(header + ref + 1 + 4 + ref + 4 + ref));
+        add(Component.TRIE_CHILDREN, 1, align(arrayHeader + 26L * ref));
+        childSlots += 26;
+        nullChildSlots += nullChildren;
+    }
+
+    // Charges a node's bestSuggestions id array; empty nodes share one array and cost nothing.
+    void addSuggestionList(int[] suggestions) {
+        if (suggestions.length == 0) return;
+        add(Component.BEST_SUGGESTIONS, 1, align(arrayHeader + 4L * suggestions.length));
+    }
+
+    // Charges a word id -> count map, its entries and boxed keys and values.
+    void addCountMap(Component component, Map<Integer, Integer> map) {
+        addMapShell(component, map.size());
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            addInteger(component, entry.getKey());
+            addInteger(component, entry.getValue());
+        }
+    }
+
+    // Charges a map whose values are themselves maps; the caller charges the inner maps.
+    void addNestedMap(Component component, Map<Integer, ?> map) {
+        addMapShell(component, map.size());
+        for (Integer key : map.keySet()) {
+            addInteger(component, key);
+        }
+    }
+
+    // Charges a HashMap object, its table and one node per entry.
+    private void addMapShell(Component component, int size) {
+        long capacity = 16;
+        while (capacity * 0.75 < size) capacity <<= 1;
+        long table = size == 0 ? 0 : align(arrayHeader + capacity * ref);
+        long map = align(header + 4 * ref + 4 * 4);
+        long node = align(header + 4 + 3L * ref);
+        add(component, 1 + (size == 0 ? 0 : 1) + size, map + table + size * node);
+    }
+
+    // Integers outside the -128..127 cache are separate objects.
+    private void addInteger(Component component, int value) {
+        if (value < -128 || value > 127) {
+            add(component, 1, align(header + 4));
+        }
+    }
+
+    private void add(Component component, long count, long size) {
+        objects[component.ordinal()] += count;
+        bytes[component.ordinal()] += size;
+    }
+
+    private long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    // Estimated bytes retained by all components.
+    public long totalBytes() {
+        long total = 0;
+        for (long b : bytes) total += b;
+        return total;
+    }
+
+    // Share of TrieNode child slots that are null.
+    public double nullChildShare() {
+        return childSlots == 0 ? 0.0 : (double) nullChildSlots / childSlots;
+    }
+
+    // Formats the report as a table, one component per line.
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        long total = totalBytes();
+        sb.append(String.format("%-24s %12s %14s %7s%n", "component", "objects", "est. bytes", "share"));
+        for (Component c : Component.values()) {
+            long b = bytes[c.ordinal()];
+            sb.append(String.format("%-24s %12d %14d %6.1f%%%n",
+                c.label, objects[c.ordinal()], b, total == 0 ? 0.0 : b * 100.0 / total));
+        }
+        sb.append(String.format("%-24s %12s %14d%n", "total", "", total));
+        sb.append(String.format("null child slots: %d of %d (%.1f%%)%n",
+            nullChildSlots, childSlots, nullChildShare() * 100));
+        return sb.toString();
+    }
+
+    // Reads UseCompressedOops from the HotSpot diagnostic bean, assuming it is on if unavailable.
+    private static boolean compressedOops() {
+        try {
+            com.sun.management.HotSpotDiagnosticMXBean bean =
+                ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+            return bean == null || Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+
+  Instrumentation for SmartWord.
+
+  Counters are plain fields bumped while SmartWord already holds its own
+  lock, so they cost a few increments per call; the getters take the same
+  lock to read them. The JFR events are only committed when a recording has
+  them enabled, e.g.
+
+     java -XX:StartFlightRecording=filename=sw.jfr EvalSmartWord ...
+
+  and the MBean is only visible once register() is called.
+ */
+public class SmartWordMetrics implements SmartWordMetricsMBean {
+
+    private final SmartWord smartWord;
+
+    // Counters written by SmartWord under its lock, and read under it below.
+    long guessCount = 0;
+    long prefixHits = 0;
+    long feedbackCount = 0;
+    long pruneCount = 0;
+    long prunedEntries = 0;
+    long budgetedGuessCount = 0;
+    long budgetOverruns = 0;
+    long speculationHits = 0;
+    long speculationMisses = 0;
+    long speculationUsedCpuNanos = 0;
+    long speculationWastedCpuNanos = 0;
+    long speculationHitNanos = 0;
+    long speculationMissNanos = 0;
+    long guessLockWaitNanos = 0;
+
+    SmartWordMetrics(SmartWord smartWord) {
+        this.smartWord = smartWord;
+    }
+
+    // Registers these metrics with the platform MBean server under the given name, e.g. "SmartWord:type=Metrics".
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            System.err.println("Error registering SmartWord MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return smartWord.vocabularySize();
+    }
+
+    @Override
+    public long getTrieNodeCount() {
+        return smartWord.trieNodeCount();
+    }
+
+    @Override
+    public long getBigramCount() {
+        return smartWord.bigramCount();
+    }
+
+    @Override
+    public long getTrigramCount() {
+        return smartWord.trigramCount();
+    }
+
+    @Override
+    public long getPruneCount() {
+        synchronized (smartWord) {
+            return pruneCount;
+        }
+    }
+
+    @Override
+    public long getPrunedEntries() {
+        synchronized (smartWord) {
+            return prunedEntries;
+        }
+    }
+
+    @Override
+    public long getGuessCount() {
+        synchronized (smartWord) {
+            return guessCount;
+        }
+    }
+
+    @Override
+    public double getPrefixHitRate() {
+        synchronized (smartWord) {
+            return guessCount == 0 ? 0.0 : (double) prefixHits / guessCount;
+        }
+    }
+
+    @Override
+    public long getWordCacheHits() {
+        return smartWord.wordCacheHits();
+    }
+
+    @Override
+    public long getWordCacheMisses() {
+        return smartWord.wordCacheMisses();
+    }
+
+    @Override
+    public double getWordCacheHitRate() {
+        synchronized (smartWord) {
+            long hits = smartWord.wordCacheHits();
+            long lookups = hits + smartWord.wordCacheMisses();
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    @Override
+    public long getBudgetedGuessCount() {
+        synchronized (smartWord) {
+            return budgetedGuessCount;
+        }
+    }
+
+    @Override
+    public double getBudgetOverrunRate() {
+        synchronized (smartWord) {
+            return budgetedGuessCount == 0 ? 0.0 : (double) budgetOverruns / budgetedGuessCount;
+        }
+    }
+
+    @Override
+    public double getSpeculationHitRate() {
+        synchronized (smartWord) {
+            long speculated = speculationHits + speculationMisses;
+            return speculated == 0 ? 0.0 : (double) speculationHits / speculated;
+        }
+    }
+
+    @Override
+    public long getSpeculationUsedCpuNanos() {
+        synchronized (smartWord) {
+            return speculationUsedCpuNanos;
+        }
+    }
+
+    @Override
+    public long getSpeculationWastedCpuNanos() {
+        synchronized (smartWord) {
+            return speculationWastedCpuNanos;
+        }
+    }
+
+    @Override
+    public double getSpeculationHitLatencyNanos() {
+        synchronized (smartWord) {
+            return speculationHits == 0 ? 0.0 : (double) speculationHitNanos / speculationHits;
+        }
+    }
+
+    @Override
+    public double getSpeculationMissLatencyNanos() {
+        synchronized (smartWord) {
+            return speculationMisses == 0 ? 0.0 : (double) speculationMissNanos / speculationMisses;
+        }
+    }
+
+    @Override
+    public double getSpeculationLatencyReduction() {
+        synchronized (smartWord) {
+            double miss = getSpeculationMissLatencyNanos();
+            long speculated = speculationHits + speculationMisses;
+            if (miss == 0.0 || speculated == 0) return 0.0;
+            return 1.0 - (double) (speculationHitNanos + speculationMissNanos) / speculated / miss;
+        }
+    }
+
+    @Override
+    public double getGuessLockWaitNanos() {
+        synchronized (smartWord) {
+            return guessCount == 0 ? 0.0 : (double) guessLockWaitNanos / guessCount;
+        }
+    }
+
+    @Override
+    public long getFeedbackCount() {
+        synchronized (smartWord) {
+            return feedbackCount;
+        }
+    }
+
+    @Override
+    public void resetCounters() {
+        synchronized (smartWord) {
+            guessCount = 0;
+            prefixHits = 0;
+            feedbackCount = 0;
+            pruneCount = 0;
+            prunedEntries = 0;
+            budgetedGuessCount = 0;
+            budgetOverruns = 0;
+            speculationHits = 0;
+            speculationMisses = 0;
+            speculationUsedCpuNanos = 0;
+            speculationWastedCpuNanos = 0;
+            speculationHitNanos = 0;
+            speculationMissNanos = 0;
+            guessLockWaitNanos = 0;
+            smartWord.resetWordCacheCounts();
+        }
+    }
+
+    // JFR event emitted for each guess() call.
+    @Name("smartword.Guess")
+    @Label("SmartWord Guess")
+    @Category("SmartWord")
+    static class GuessEvent extends Event {
+        @Label("Prefix Length")
+        int prefixLength;
+
+        @Label("Trie Nodes Visited")
+        int nodesVisited;
+
+        @Label("Candidates Scored")
+        int candidatesScored;
+
+        @Label("Over Budget")
+        boolean overBudget;
+    }
+
+    // JFR event emitted for each feedback() call.
+    @Name("smartword.Feedback")
+    @Label("SmartWord Feedback")
+    @Category("SmartWord")
+    static class FeedbackEvent extends Event {
+        @Label("Correct Guess")
+        boolean correctGuess;
+
+        @Label("Word Length")
+        int wordLength;
+
+        @Label("Trie Nodes Visited")
+        int nodesVisited;
+    }
+
+    // JFR event emitted for each processOldMessages() call.
+    @Name("smartword.ProcessOldMessages")
+    @Label("SmartWord Process Old Messages")
+    @Category("SmartWord")
+    @Description("Training pass over an old message file")
+    static class ProcessOldMessagesEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Words Processed")
+        long wordsProcessed;
+    }
+}
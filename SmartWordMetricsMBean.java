@@ -0,0 +1,54 @@
+// JMX management interface exposing SmartWord internals; see SmartWordMetrics.
+public interface SmartWordMetricsMBean {
+
+    // Number of distinct words known to the model.
+    int getVocabularySize();
+
+    // Number of nodes allocated in the dictionary trie.
+    long getTrieNodeCount();
+
+    // Number of (previous word, word) entries in the bigram table.
+    long getBigramCount();
+
+    // Number of (pre-previous word, previous word, word) entries in the trigram table.
+    long getTrigramCount();
+
+    // Times limitFrequencyMap pruned a table, and total entries it removed.
+    long getPruneCount();
+    long getPrunedEntries();
+
+    // Keystrokes answered by guess(), and the share whose prefix was found in the trie.
+    long getGuessCount();
+    double getPrefixHitRate();
+
+    // Word Strings returned from the WordArena cache and built anew, and the cache's hit rate.
+    long getWordCacheHits();
+    long getWordCacheMisses();
+    double getWordCacheHitRate();
+
+    // Keystrokes answered under a latency budget, and the share that ran out of it before context ranking finished.
+    long getBudgetedGuessCount();
+    double getBudgetOverrunRate();
+
+    // Speculative guessing: share of speculated keystrokes answered from a precomputed result, thread CPU time
+    // spent on results that were used and on results that were thrown away.
+    double getSpeculationHitRate();
+    long getSpeculationUsedCpuNanos();
+    long getSpeculationWastedCpuNanos();
+
+    // Average guess() latency on speculation hits and misses, and the share of latency saved over answering every
+    // speculated keystroke the way misses are answered.
+    double getSpeculationHitLatencyNanos();
+    double getSpeculationMissLatencyNanos();
+    double getSpeculationLatencyReduction();
+
+    // Average time a guess() call waited for the model's lock, e.g. behind a speculation task; included in the
+    // latencies above.
+    double getGuessLockWaitNanos();
+
+    // Feedback calls received.
+    long getFeedbackCount();
+
+    // Clears the counters (table sizes are live and unaffected).
+    void resetCounters();
+}
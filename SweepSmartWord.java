@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+
+  Usage: SweepSmartWord wordFile oldMessageFile newMessageFile [threads]
+
+  Description:
+
+  Evaluates a grid of SmartWord scoring parameters without retraining. The
+  model is trained once on oldMessageFile; each grid point then runs on a
+  fork() of it, which shares the trained trie and tables and copies only
+  what its own feedback changes. Forks are evaluated in parallel on
+  newMessageFile and reported from best to worst accuracy.
+
+  ngramCap values above the one used for training have no effect on the
+  trained tables, so the grid only sweeps it downward. The same goes for
+  suggestionCap: the trie's suggestion lists are built with the training cap
+  of 10 and a larger cap would only let feedback lengthen them, so it is
+  swept downward too.
+ */
+public class SweepSmartWord {
+
+    private static final int[] CORRECT_BONUS = {10, 50, 100};
+    private static final int[] WRONG_PENALTY = {0, 2, 10};
+    private static final int[] SUGGESTION_CAP = {3, 5, 10};
+    private static final int[] NGRAM_CAP = {10, 25, 50};
+
+    // One grid point and its evaluation.
+    private static class Point {
+        final int correctBonus;
+        final int wrongPenalty;
+        final int suggestionCap;
+        final int ngramCap;
+        SmartWordEval.Result result;
+
+        Point(int correctBonus, int wrongPenalty, int suggestionCap, int ngramCap) {
+            this.correctBonus = correctBonus;
+            this.wrongPenalty = wrongPenalty;
+            this.suggestionCap = suggestionCap;
+            this.ngramCap = ngramCap;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: SweepSmartWord wordFile oldMessageFile newMessageFile [threads]");
+            System.exit(-1);
+        }
+        int threads = args.length == 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Training base model...");
+        SmartWord base = new SmartWord(args[0]);
+        base.processOldMessages(args[1]);
+
+        List<Point> grid = new ArrayList<>();
+        for (int bonus : CORRECT_BONUS)
+            for (int penalty : WRONG_PENALTY)
+                for (int cap : SUGGESTION_CAP)
+                    for (int ngramCap : NGRAM_CAP)
+                        grid.add(new Point(bonus, penalty, cap, ngramCap));
+
+        // Fork on this thread so the base is never read while another fork is being taken.
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Point>> futures = new ArrayList<>();
+        for (Point point : grid) {
+            SmartWord sw = base.fork();
+            futures.add(pool.submit(() -> evaluate(sw, point, args[2])));
+        }
+        pool.shutdown();
+        for (Future<Point> future : futures) {
+            future.get();
+        }
+
+        grid.sort((a, b) -> Double.compare(b.result.accuracy, a.result.accuracy));
+        System.out.printf("%8s %8s %8s %8s %10s %12s%n", "bonus", "penalty", "sugCap", "ngramCap", "accuracy", "time/guess");
+        for (Point p : grid) {
+            System.out.printf("%8d %8d %8d %8d %10.4f %12.4E%n",
+                p.correctBonus, p.wrongPenalty, p.suggestionCap, p.ngramCap, p.result.accuracy, p.result.avgTime);
+        }
+    }
+
+    // Applies a grid point to a fork and evaluates it on the calling worker thread.
+    private static Point evaluate(SmartWord sw, Point point, String newMessageFile) throws IOException {
+        sw.setParameters(point.correctBonus, point.wrongPenalty, point.suggestionCap, point.ngramCap);
+        point.result = SmartWordEval.evaluate(sw, newMessageFile);
+        return point;
+    }
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+
+/*
+
+  Stores every word SmartWord knows exactly once, as characters in one
+  contiguous array, and gives each word a dense int id.
+
+  Trie suggestion lists and n-gram tables hold these ids instead of String
+  references. A word's frequency lives next to its text, indexed by the same
+  id. Strings are only built when a word has to leave the model (a guess
+  being returned, an export), and a small direct-mapped cache keeps the
+  recently returned ones so that repeated guesses reuse them. Forks share an
+  arena until one of them learns a word, so several threads may read it at
+  once; each cache slot holds an immutable (id, String) pair, so a racing
+  reader sees either the old pair or the new one, never a mix. The cache's
+  hits and misses are counted for SmartWordMetrics; on an arena shared by
+  forks the counts cover all of them and may miss a few racing increments.
+
+  Lookup from text to id goes through an open-addressed table of ids hashed
+  on the characters, so callers can look up a CharSequence such as a
+  StringBuilder without turning it into a String first.
+
+  Optionally, once the dictionary is loaded, freeze() builds a minimal
+  perfect hash over it and renumbers the dictionary words so that a word's
+  id is its hash value. Dictionary lookups then cost one hash and one
+  comparison, and the open-addressed table only has to hold the words
+  learned afterwards. Both use the same 64-bit hash of the text, so a word
+  is hashed once per lookup even when it has to be probed in both.
+ */
+class WordArena {
+
+    private static final int CACHE_SIZE = 256;
+
+    private char[] chars;
+    private int used = 0;
+
+    // offsets[id] .. offsets[id + 1] is the text of word id.
+    private int[] offsets;
+    private int[] frequencies;
+    private int size = 0;
+
+    // Open-addressed table of id + 1 (0 = empty) for ids from staticSize on, kept at most half full.
+    private int[] index;
+
+    // Perfect hash of the words below staticSize, or null before freeze().
+    private PerfectHash dictionary;
+    private int staticSize = 0;
+
+    // Recently built Strings, slot id % CACHE_SIZE.
+    private final CachedWord[] cache = new CachedWord[CACHE_SIZE];
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+
+    private static final class CachedWord {
+        final int id;
+        final String text;
+
+        CachedWord(int id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    WordArena() {
+        chars = new char[1 << 16];
+        offsets = new int[1025];
+        frequencies = new int[1024];
+        index = new int[2048];
+    }
+
+    // Copy that shares nothing with this arena, for a fork about to modify it.
+    WordArena copy() {
+        WordArena copy = new WordArena();
+        copy.chars = chars.clone();
+        copy.used = used;
+        copy.offsets = offsets.clone();
+        copy.frequencies = frequencies.clone();
+        copy.size = size;
+        copy.index = index.clone();
+        copy.dictionary = dictionary;
+        copy.staticSize = staticSize;
+        copy.copyCacheCounts(this);
+        return copy;
+    }
+
+    // Number of words stored.
+    int size() {
+        return size;
+    }
+
+    // Total characters of all words.
+    int chars() {
+        return used;
+    }
+
+    // Id of word, or -1 if it is not stored.
+    int find(CharSequence word) {
+        return find(word, PerfectHash.hash(word));
+    }
+
+    // find() for a word whose PerfectHash.hash() is key.
+    private int find(CharSequence word, long key) {
+        if (dictionary != null) {
+            int id = dictionary.apply(key);
+            if (matches(id, word)) return id;
+        }
+        int mask = index.length - 1;
+        for (int slot = spread(key) & mask; ; slot = (slot + 1) & mask) {
+            int id = index[slot] - 1;
+            if (id < 0) return -1;
+            if (matches(id, word)) return id;
+        }
+    }
+
+    // Id of word, adding it with frequency 0 if it is not stored yet.
+    int intern(CharSequence word) {
+        long key = PerfectHash.hash(word);
+        int id = find(word, key);
+        if (id >= 0) return id;
+
+        if (used + word.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, used + word.length()));
+        }
+        if (size == frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+
+        id = size++;
+        offsets[id] = used;
+        for (int i = 0; i < word.length(); i++) {
+            chars[used++] = word.charAt(i);
+        }
+        offsets[id + 1] = used;
+        frequencies[id] = 0;
+
+        if ((size - staticSize) * 2 > index.length) {
+            rehash(index.length * 2);
+        } else {
+            insertIndex(id, key);
+        }
+        return id;
+    }
+
+    // Builds the perfect hash over the words stored so far and renumbers them by it.
+    // Ids handed out before this call are invalid afterwards; returns false if no hash could be built.
+    boolean freeze() {
+        if (dictionary != null || size == 0) return false;
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id++) {
+            keys[id] = PerfectHash.hash(chars, offsets[id], offsets[id + 1]);
+        }
+        PerfectHash hash = PerfectHash.build(keys);
+        if (hash == null) return false;
+
+        // Lay the words out again in hash order, so that id == hash.apply(word).
+        int[] order = new int[size];
+        for (int id = 0; id < size; id++) {
+            order[hash.apply(keys[id])] = id;
+        }
+        char[] newChars = new char[chars.length];
+        int[] newOffsets = new int[offsets.length];
+        int[] newFrequencies = new int[frequencies.length];
+        int position = 0;
+        for (int id = 0; id < size; id++) {
+            int old = order[id];
+            int length = offsets[old + 1] - offsets[old];
+            System.arraycopy(chars, offsets[old], newChars, position, length);
+            newOffsets[id] = position;
+            newFrequencies[id] = frequencies[old];
+            position += length;
+        }
+        newOffsets[size] = position;
+
+        chars = newChars;
+        offsets = newOffsets;
+        frequencies = newFrequencies;
+        dictionary = hash;
+        staticSize = size;
+        index = new int[2048];
+        Arrays.fill(cache, null);
+        return true;
+    }
+
+    // Number of words covered by the perfect hash.
+    int dictionarySize() {
+        return staticSize;
+    }
+
+    // Bytes of the lookup structures alone: the perfect hash and the open-addressed table.
+    long indexBytes() {
+        return 4L * index.length + (dictionary == null ? 0 : dictionary.bytes());
+    }
+
+    int frequency(int id) {
+        return frequencies[id];
+    }
+
+    void setFrequency(int id, int frequency) {
+        frequencies[id] = frequency;
+    }
+
+    // The text of word id, reusing the String last built for it if it is still cached.
+    String word(int id) {
+        int slot = id & (CACHE_SIZE - 1);
+        CachedWord cached = cache[slot];
+        if (cached != null && cached.id == id) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+            cached = new CachedWord(id, new String(chars, offsets[id], offsets[id + 1] - offsets[id]));
+            cache[slot] = cached;
+        }
+        return cached.text;
+    }
+
+    // word() calls answered from the cache, and calls that had to build the String.
+    long cacheHits() {
+        return cacheHits;
+    }
+
+    long cacheMisses() {
+        return cacheMisses;
+    }
+
+    // Carries another arena's counts over, for an arena that replaces it.
+    void copyCacheCounts(WordArena from) {
+        cacheHits = from.cacheHits;
+        cacheMisses = from.cacheMisses;
+    }
+
+    void resetCacheCounts() {
+        cacheHits = 0;
+        cacheMisses = 0;
+    }
+
+    // Bytes held by the arena's arrays, excluding their headers, for footprint reports; ref is the reference width.
+    long arrayBytes(int ref) {
+        return 2L * chars.length + 4L * (offsets.length + frequencies.length) + (long) ref * CACHE_SIZE + indexBytes();
+    }
+
+    // Lengths of the Strings currently held by the cache.
+    int[] cachedLengths() {
+        int[] lengths = new int[CACHE_SIZE];
+        int count = 0;
+        for (CachedWord cached : cache) {
+            if (cached != null) lengths[count++] = cached.text.length();
+        }
+        return Arrays.copyOf(lengths, count);
+    }
+
+    private boolean matches(int id, CharSequence word) {
+        int start = offsets[id];
+        int length = offsets[id + 1] - start;
+        if (length != word.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        for (int id = staticSize; id < size; id++) {
+            insertIndex(id, PerfectHash.hash(chars, offsets[id], offsets[id + 1]));
+        }
+    }
+
+    private void insertIndex(int id, long key) {
+        int mask = index.length - 1;
+        int slot = spread(key) & mask;
+        while (index[slot] != 0) slot = (slot + 1) & mask;
+        index[slot] = id + 1;
+    }
+
+    // Folds the 64-bit text hash so the low bits used for slots depend on all of it.
+    private static int spread(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,9 @@
+// The keystroke interface EvalSmartWord drives: guesses per letter typed, then feedback on the word.
+public interface WordPredictor {
+
+    // Returns up to three guesses for the word being typed after letter is entered at letterPosition.
+    String[] guess(char letter, int letterPosition, int wordPosition);
+
+    // Reports whether a guess was correct and, once known, the word that was typed.
+    void feedback(boolean isCorrectGuess, String correctWord);
+}